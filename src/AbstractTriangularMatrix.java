@@ -12,6 +12,14 @@ public interface AbstractTriangularMatrix {
 	 */
 	public abstract void incrementCount(int i, int j);
 
+	/**
+	 * Add a value to the value at position i,j
+	 * @param i a row id
+	 * @param j a column id
+	 * @param count the value to add
+	 */
+	public abstract void addToCount(int i, int j, int count);
+
 	/**
 	 * Get the value stored at a given position
 	 * @param i a row id
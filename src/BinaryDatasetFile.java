@@ -0,0 +1,194 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * BinaryDatasetFile is a compact binary copy of a text dataset, which is loaded
+ * without parsing. The text file stays the reference: the binary file records
+ * the length and the modification time of the text file from which it was
+ * built, and it is only used while they have not changed.
+ *
+ * The file contains, in big-endian order:
+ * <ul>
+ * <li>a header: magic number, version, length and modification time of the text
+ * file, number of transactions, number of distinct items, total number of items
+ * and number of bytes used by an item (1, 2 or 4);</li>
+ * <li>the item dictionary: the distinct items in ascending order;</li>
+ * <li>the offsets: the position of the first item of each transaction, followed
+ * by the total number of items;</li>
+ * <li>the items of all the transactions, as indexes in the dictionary. As the
+ * dictionary is sorted, the indexes of a sorted transaction are sorted too.</li>
+ * </ul>
+ * The file is loaded by mapping it in memory with FileChannel.map, and copying
+ * the arrays in bulk.
+ */
+public class BinaryDatasetFile {
+
+    /** Magic number at the start of the file ("HMPB") */
+    private static final int MAGIC = 0x484D5042;
+    /** Version of the format */
+    private static final int VERSION = 1;
+    /** Size of the header in bytes */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES + 4 * Integer.BYTES;
+    /** Extension added to the name of the text file */
+    public static final String EXTENSION = ".hmpb";
+
+    private BinaryDatasetFile() {
+    }
+
+    /**
+     * Get the binary file corresponding to a text dataset
+     * @param textFile the text file
+     * @return the binary file, in the same directory
+     */
+    public static File binaryFileFor(File textFile) {
+        return new File(textFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Load the binary copy of a text dataset, if it exists and is up to date
+     * @param textFile the text file
+     * @return the transactions, or null if there is no valid binary file for the current text file
+     */
+    public static CsrTransactionStore readIfUpToDate(File textFile) {
+        File binaryFile = binaryFileFor(textFile);
+        if (!binaryFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != textFile.length() || buffer.getLong() != textFile.lastModified()) {
+                return null;
+            }
+            int transactionCount = buffer.getInt();
+            int itemCount = buffer.getInt();
+            int totalItems = buffer.getInt();
+            int itemWidth = buffer.getInt();
+            long tableBytes = ((long) itemCount + transactionCount + 1) * Integer.BYTES;
+            if (transactionCount < 0 || itemCount < 0 || totalItems < 0
+                    || buffer.remaining() != tableBytes + (long) totalItems * itemWidth) {
+                return null;
+            }
+
+            int[] dictionary = new int[itemCount];
+            int[] offsets = new int[transactionCount + 1];
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.get(dictionary);
+            ints.get(offsets);
+            // the tables are within the buffer, so their size fits in an int
+            buffer.position(buffer.position() + (int) tableBytes);
+            if (offsets[transactionCount] != totalItems) {
+                return null;
+            }
+
+            int[] items = new int[totalItems];
+            readIndexes(buffer, itemWidth, items);
+            for (int i = 0; i < totalItems; i++) {
+                items[i] = dictionary[items[i]];
+            }
+            int[] weights = new int[transactionCount];
+            Arrays.fill(weights, 1);
+            return new CsrTransactionStore(items, offsets, weights);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            // an unreadable or truncated file is ignored, the text file is parsed instead
+            return null;
+        }
+    }
+
+    /**
+     * Read the dictionary indexes of the items
+     * @param buffer the buffer, positioned on the first item
+     * @param itemWidth the number of bytes of an item
+     * @param indexes the array receiving the indexes
+     */
+    private static void readIndexes(ByteBuffer buffer, int itemWidth, int[] indexes) {
+        if (itemWidth == Integer.BYTES) {
+            buffer.asIntBuffer().get(indexes);
+        } else if (itemWidth == Short.BYTES) {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = buffer.getShort() & 0xFFFF;
+            }
+        } else if (itemWidth == Byte.BYTES) {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = buffer.get() & 0xFF;
+            }
+        } else {
+            throw new IndexOutOfBoundsException("Unknown item width " + itemWidth);
+        }
+    }
+
+    /**
+     * Write the binary copy of a text dataset. The file is written under a
+     * temporary name and then renamed, so that a partial file is never read.
+     * @param database the transactions read from the text file (before any modification)
+     * @param textFile the text file
+     * @param textLength the length of the text file when it was read
+     * @param textLastModified the modification time of the text file when it was read
+     * @throws IOException if the file cannot be written, or if the database has more
+     * than Integer.MAX_VALUE items
+     */
+    public static void write(CsrTransactionStore database, File textFile, long textLength, long textLastModified)
+            throws IOException {
+        int[] dictionary = TransactionStores.distinctItems(database);
+        int itemWidth = dictionary.length <= 1 << Byte.SIZE ? Byte.BYTES
+                : dictionary.length <= 1 << Short.SIZE ? Short.BYTES : Integer.BYTES;
+        long totalItems = 0;
+        for (int tid = 0; tid < database.size(); tid++) {
+            totalItems += database.getLength(tid);
+        }
+        if (totalItems > Integer.MAX_VALUE) {
+            throw new IOException("Too many items for a binary dataset file: " + totalItems);
+        }
+
+        File binaryFile = binaryFileFor(textFile);
+        File temporaryFile = new File(binaryFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(textLength);
+            output.writeLong(textLastModified);
+            output.writeInt(database.size());
+            output.writeInt(dictionary.length);
+            output.writeInt((int) totalItems);
+            output.writeInt(itemWidth);
+            for (int item : dictionary) {
+                output.writeInt(item);
+            }
+            int offset = 0;
+            output.writeInt(offset);
+            for (int tid = 0; tid < database.size(); tid++) {
+                offset += database.getLength(tid);
+                output.writeInt(offset);
+            }
+            CsrTransactionStore.Cursor cursor = database.cursor();
+            int[] items = database.cursor().getItems();
+            while (cursor.next()) {
+                for (int i = cursor.getOffset(); i < cursor.getEnd(); i++) {
+                    int index = Arrays.binarySearch(dictionary, items[i]);
+                    if (itemWidth == Byte.BYTES) {
+                        output.writeByte(index);
+                    } else if (itemWidth == Short.BYTES) {
+                        output.writeShort(index);
+                    } else {
+                        output.writeInt(index);
+                    }
+                }
+            }
+        }
+        Files.move(temporaryFile.toPath(), binaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,365 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BitmapTransactionStore stores each transaction as a bitmap over the distinct
+ * items of the database. It is used for dense databases, where a transaction
+ * contains a large fraction of the items: checking if a transaction contains a
+ * pattern is then a few AND operations on 64-bit words, and removing a pattern
+ * clears its bits in place.
+ *
+ * Items are recoded to dense ids in ascending order, so that the bits of a
+ * transaction are visited in the ascending order of the original items. The
+ * bitmaps of all transactions are stored in a single long array, one row of
+ * wordsPerTransaction words per distinct transaction. Transaction ids never
+ * change: a transaction merged into an identical one is replaced by an empty
+ * transaction of weight 0.
+ */
+public class BitmapTransactionStore implements TransactionStore {
+
+    /** The original item of each dense id, in ascending order */
+    private final int[] items;
+    /** Number of 64-bit words used by a transaction */
+    private final int wordsPerTransaction;
+    /** The bitmaps of the transactions */
+    private final long[] bits;
+    /** The number of items of each distinct transaction */
+    private final int[] lengths;
+    /** The weight of each distinct transaction */
+    private final int[] weights;
+    /** Number of distinct transactions */
+    private final int size;
+    /** The id of each distinct transaction, by content */
+    private final Map<Row, Integer> positions = new HashMap<>();
+    /** Number of transactions of the original database */
+    private final int transactionCount;
+    /** Size in bits of the transactions */
+    private int sizeInBits = 0;
+    /** Words of the last pattern mask (only the non-zero words) */
+    private int[] maskWords = new int[16];
+    /** Bits of the last pattern mask */
+    private long[] maskBits = new long[16];
+    /** Number of non-zero words in the last pattern mask */
+    private int maskLength = 0;
+
+    /**
+     * Constructor
+     * @param database a list of sorted transactions
+     */
+    public BitmapTransactionStore(List<int[]> database) {
+        this(new CsrTransactionStore(database));
+    }
+
+    /**
+     * Constructor
+     * @param database the source store (it is not modified)
+     */
+    public BitmapTransactionStore(TransactionStore database) {
+        this(database, TransactionStores.distinctItems(database));
+    }
+
+    /**
+     * Constructor
+     * @param database the source store (it is not modified)
+     * @param items the distinct items of the database, in ascending order
+     */
+    BitmapTransactionStore(TransactionStore database, int[] items) {
+        List<int[]> distinctTransactions = new ArrayList<>();
+        this.weights = TransactionStores.collapse(database, distinctTransactions);
+        this.items = items;
+        this.wordsPerTransaction = Math.max(1, (items.length + 63) >>> 6);
+        this.size = distinctTransactions.size();
+        this.transactionCount = database.getTransactionCount();
+        this.bits = new long[size * wordsPerTransaction];
+        this.lengths = new int[size];
+        for (int tid = 0; tid < size; tid++) {
+            int[] transaction = distinctTransactions.get(tid);
+            int offset = tid * wordsPerTransaction;
+            for (int item : transaction) {
+                int id = Arrays.binarySearch(items, item);
+                bits[offset + (id >>> 6)] |= 1L << id;
+            }
+            lengths[tid] = transaction.length;
+            sizeInBits += transaction.length * Integer.SIZE * weights[tid];
+            positions.put(new Row(tid), tid);
+        }
+    }
+
+    /**
+     * Copy constructor. The keys of the transactions are copied with their hash
+     * code, so the bitmaps are not hashed again.
+     * @param source the store to copy
+     */
+    private BitmapTransactionStore(BitmapTransactionStore source) {
+        this.items = source.items;
+        this.wordsPerTransaction = source.wordsPerTransaction;
+        this.bits = source.bits.clone();
+        this.lengths = source.lengths.clone();
+        this.weights = source.weights.clone();
+        this.size = source.size;
+        this.transactionCount = source.transactionCount;
+        this.sizeInBits = source.sizeInBits;
+        for (Row key : source.positions.keySet()) {
+            positions.put(new Row(key.tid, key.hash), key.tid);
+        }
+    }
+
+    @Override
+    public BitmapTransactionStore copy() {
+        return new BitmapTransactionStore(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getWeight(int tid) {
+        return weights[tid];
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    @Override
+    public int getLength(int tid) {
+        return lengths[tid];
+    }
+
+    @Override
+    public int getItems(int tid, int[] buffer) {
+        int offset = tid * wordsPerTransaction;
+        int length = 0;
+        for (int w = 0; w < wordsPerTransaction; w++) {
+            long word = bits[offset + w];
+            while (word != 0) {
+                buffer[length++] = items[(w << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Build the mask of a pattern. A pattern that is not sorted, that contains
+     * the same item twice or an item that does not appear in the database cannot
+     * be contained in a sorted transaction, so no mask is built for it.
+     * @param pattern the pattern
+     * @return true if the mask was built, false if no transaction contains the pattern
+     */
+    private boolean buildMask(int[] pattern) {
+        maskLength = 0;
+        for (int i = 0; i < pattern.length; i++) {
+            if (i > 0 && pattern[i] <= pattern[i - 1]) {
+                return false;
+            }
+            int id = Arrays.binarySearch(items, pattern[i]);
+            if (id < 0) {
+                return false;
+            }
+            int word = id >>> 6;
+            // ids are ascending, so the words of the mask are ascending too
+            if (maskLength == 0 || maskWords[maskLength - 1] != word) {
+                if (maskLength == maskWords.length) {
+                    maskWords = Arrays.copyOf(maskWords, maskLength * 2);
+                    maskBits = Arrays.copyOf(maskBits, maskLength * 2);
+                }
+                maskWords[maskLength] = word;
+                maskBits[maskLength] = 0L;
+                maskLength++;
+            }
+            maskBits[maskLength - 1] |= 1L << id;
+        }
+        return true;
+    }
+
+    /**
+     * Check if a transaction contains the last mask built by buildMask()
+     * @param tid a transaction id
+     * @return true if all bits of the mask are set in the transaction
+     */
+    private boolean containsMask(int tid) {
+        int offset = tid * wordsPerTransaction;
+        for (int m = 0; m < maskLength; m++) {
+            if ((bits[offset + maskWords[m]] & maskBits[m]) != maskBits[m]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(int tid, int[] pattern) {
+        return buildMask(pattern) && containsMask(tid);
+    }
+
+    @Override
+    public int support(int[] pattern) {
+        if (!buildMask(pattern)) {
+            return 0;
+        }
+        int count = 0;
+        for (int tid = 0; tid < size; tid++) {
+            if (lengths[tid] >= pattern.length && containsMask(tid)) {
+                count += weights[tid];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int support(int[] pattern, int minSupport) {
+        if (!buildMask(pattern)) {
+            return 0;
+        }
+        int remaining = transactionCount;
+        int count = 0;
+        for (int tid = 0; tid < size; tid++) {
+            if (lengths[tid] >= pattern.length && containsMask(tid)) {
+                count += weights[tid];
+            }
+            remaining -= weights[tid];
+            if (count + remaining < minSupport) {
+                return count + remaining;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the transactions that contain each pattern of a list. Each pattern is
+     * counted on its own, from the masks of its items, which is
+     * faster than one pass over all the transactions with a PatternTrie.
+     * @param patterns the patterns (an empty pattern has a support of 0)
+     * @return the support of each pattern, in the order of the list
+     */
+    @Override
+    public int[] supports(List<int[]> patterns) {
+        int[] result = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            result[p] = patterns.get(p).length == 0 ? 0 : support(patterns.get(p));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean exists(int[] pattern) {
+        if (!buildMask(pattern)) {
+            return false;
+        }
+        for (int tid = 0; tid < size; tid++) {
+            if (lengths[tid] >= pattern.length && containsMask(tid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int removeItemset(int[] pattern) {
+        if (!buildMask(pattern)) {
+            return 0;
+        }
+        int modified = 0;
+        for (int tid = 0; tid < size; tid++) {
+            if (lengths[tid] >= pattern.length && containsMask(tid)) {
+                // the key depends on the bits, so it is removed before they change
+                positions.remove(new Row(tid));
+                int offset = tid * wordsPerTransaction;
+                for (int m = 0; m < maskLength; m++) {
+                    bits[offset + maskWords[m]] &= ~maskBits[m];
+                }
+                lengths[tid] -= pattern.length;
+                sizeInBits -= pattern.length * Integer.SIZE * weights[tid];
+                mergeIdenticalTransaction(tid);
+                modified++;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Merge a modified transaction with the identical transaction, if there is one.
+     * The transaction that comes last is merged into the first one, and is replaced
+     * by an empty transaction of weight 0, so that the transaction ids do not change.
+     * @param tid the id of the modified transaction
+     */
+    private void mergeIdenticalTransaction(int tid) {
+        Row key = new Row(tid);
+        Integer other = positions.get(key);
+        if (other == null) {
+            positions.put(key, tid);
+        } else if (other < tid) {
+            mergeInto(tid, other);
+        } else {
+            positions.remove(key);
+            mergeInto(other, tid);
+            positions.put(new Row(tid), tid);
+        }
+    }
+
+    /**
+     * Merge a transaction into an identical one, and make it empty with weight 0
+     * @param tid the transaction to merge
+     * @param target the identical transaction
+     */
+    private void mergeInto(int tid, int target) {
+        weights[target] += weights[tid];
+        weights[tid] = 0;
+        lengths[tid] = 0;
+        Arrays.fill(bits, tid * wordsPerTransaction, (tid + 1) * wordsPerTransaction, 0L);
+    }
+
+    @Override
+    public int getSizeInBits() {
+        return sizeInBits;
+    }
+
+    /** A key comparing the words of a transaction bitmap */
+    private final class Row {
+        /** The transaction id */
+        private final int tid;
+        /** The hash code of the words when the key was created */
+        private final int hash;
+
+        Row(int tid) {
+            this.tid = tid;
+            int hash = 1;
+            for (int w = tid * wordsPerTransaction; w < (tid + 1) * wordsPerTransaction; w++) {
+                hash = 31 * hash + Long.hashCode(bits[w]);
+            }
+            this.hash = hash;
+        }
+
+        Row(int tid, int hash) {
+            this.tid = tid;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Row)) {
+                return false;
+            }
+            int offset = tid * wordsPerTransaction;
+            int otherOffset = ((Row) o).tid * wordsPerTransaction;
+            for (int w = 0; w < wordsPerTransaction; w++) {
+                if (bits[offset + w] != bits[otherOffset + w]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CandidateCache memorizes the evaluation of candidate patterns against the
+ * residual database: the number of residual transactions that contain the
+ * pattern and the compressed size obtained by adding it to the code table.
+ *
+ * The cached values are only valid for a given residual database. Each entry
+ * is therefore tied to the generation of the code table, which changes when a
+ * pattern is accepted and deleteItemset rewrites the residual database. When the
+ * generation changes, the whole cache is invalidated.
+ *
+ * An evaluation can also be partial: the scan was stopped because the pattern
+ * could not reach a target size, so only a lower bound of the size is known.
+ *
+ * The cache is bounded and evicts the least recently used pattern.
+ */
+public class CandidateCache {
+
+    /** The evaluation of a candidate pattern */
+    public static class Entry {
+        /** Number of residual transactions containing the pattern */
+        private final int support;
+        /** Compressed size in bits if the pattern is added to the code table */
+        private final int sizeInBits;
+        /** False if the support is an upper bound and the size a lower bound */
+        private final boolean exact;
+
+        Entry(int support, int sizeInBits, boolean exact) {
+            this.support = support;
+            this.sizeInBits = sizeInBits;
+            this.exact = exact;
+        }
+
+        public int getSupport() {
+            return support;
+        }
+
+        public int getSizeInBits() {
+            return sizeInBits;
+        }
+
+        public boolean isExact() {
+            return exact;
+        }
+    }
+
+    /** The cached evaluations, in access order */
+    private final LinkedHashMap<PatternKey, Entry> entries;
+    /** The code table generation of the cached evaluations */
+    private long generation = -1;
+    /** Number of lookups that found a valid entry */
+    private long hits = 0;
+    /** Number of lookups that did not find a valid entry */
+    private long misses = 0;
+    /** Number of times the cache was invalidated by a new generation */
+    private long invalidations = 0;
+
+    /**
+     * Constructor
+     * @param maxSize the maximum number of patterns kept in the cache
+     */
+    public CandidateCache(final int maxSize) {
+        entries = new LinkedHashMap<PatternKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PatternKey, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the cached evaluation of a pattern
+     * @param pattern a sorted pattern
+     * @param generation the current generation of the code table
+     * @return the evaluation, or null if the pattern has not been evaluated for this generation
+     */
+    public Entry get(int[] pattern, long generation) {
+        checkGeneration(generation);
+        Entry entry = entries.get(new PatternKey(pattern));
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Store the evaluation of a pattern
+     * @param pattern a sorted pattern (it must not be modified afterwards)
+     * @param support the number of residual transactions containing the pattern
+     * @param sizeInBits the compressed size if the pattern is added to the code table
+     * @param generation the current generation of the code table
+     * @return the stored evaluation
+     */
+    public Entry put(int[] pattern, int support, int sizeInBits, long generation) {
+        return put(pattern, support, sizeInBits, true, generation);
+    }
+
+    /**
+     * Store the evaluation of a pattern, which may be partial
+     * @param pattern a sorted pattern (it must not be modified afterwards)
+     * @param support the support, or an upper bound of it if the evaluation is partial
+     * @param sizeInBits the compressed size, or a lower bound of it if the evaluation is partial
+     * @param exact false if the evaluation is partial
+     * @param generation the current generation of the code table
+     * @return the stored evaluation
+     */
+    public Entry put(int[] pattern, int support, int sizeInBits, boolean exact, long generation) {
+        checkGeneration(generation);
+        Entry entry = new Entry(support, sizeInBits, exact);
+        entries.put(new PatternKey(pattern), entry);
+        return entry;
+    }
+
+    /**
+     * Invalidate the cache if the code table generation has changed
+     * @param generation the current generation of the code table
+     */
+    private void checkGeneration(long generation) {
+        if (generation != this.generation) {
+            if (!entries.isEmpty()) {
+                entries.clear();
+                invalidations++;
+            }
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear() {
+        entries.clear();
+        generation = -1;
+        hits = 0;
+        misses = 0;
+        invalidations = 0;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Get the number of patterns in the cache
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+}
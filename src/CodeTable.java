@@ -0,0 +1,132 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * CodeTable stores the patterns accepted by a HMP runner together with a usage
+ * counter for each pattern. Each pattern occupies a slot, whose id is its
+ * position in the code table.
+ *
+ * A pattern is only added once it has been accepted. The arrays only grow, so
+ * clear() keeps them and the next runs do not allocate memory until the code
+ * table exceeds its previous size.
+ *
+ * The code table is also a List of patterns (slots in order) so that it can be
+ * passed to methods that cover a database with a List of patterns.
+ */
+public class CodeTable extends AbstractList<int[]> implements RandomAccess {
+
+    /** The pattern of each slot */
+    private int[][] patterns;
+    /** The usage counter of each slot */
+    private int[] usages;
+    /** Number of slots */
+    private int size = 0;
+    /** Incremented each time a pattern is added or the code table is cleared */
+    private long generation = 0;
+
+    /**
+     * Constructor
+     */
+    public CodeTable() {
+        this(16);
+    }
+
+    /**
+     * Constructor
+     * @param initialCapacity the expected number of patterns
+     */
+    public CodeTable(int initialCapacity) {
+        patterns = new int[Math.max(initialCapacity, 1)][];
+        usages = new int[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * Add a pattern in a new slot, with a usage of 0. The generation changes.
+     * @param pattern the pattern
+     * @return true
+     */
+    @Override
+    public boolean add(int[] pattern) {
+        if (size == patterns.length) {
+            patterns = Arrays.copyOf(patterns, size * 2);
+            usages = Arrays.copyOf(usages, size * 2);
+        }
+        patterns[size] = pattern;
+        usages[size] = 0;
+        size++;
+        generation++;
+        return true;
+    }
+
+    /**
+     * Get the pattern stored in a slot
+     * @param slot the slot id
+     * @return the pattern
+     */
+    @Override
+    public int[] get(int slot) {
+        checkSlot(slot);
+        return patterns[slot];
+    }
+
+    /**
+     * Get the number of slots
+     * @return the number of patterns
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the usage counter of a slot
+     * @param slot the slot id
+     * @return the usage
+     */
+    public int getUsage(int slot) {
+        checkSlot(slot);
+        return usages[slot];
+    }
+
+    /**
+     * Set the usage counter of a slot
+     * @param slot the slot id
+     * @param usage the new usage
+     */
+    public void setUsage(int slot, int usage) {
+        checkSlot(slot);
+        usages[slot] = usage;
+    }
+
+    /**
+     * Remove all patterns from the code table. The arrays are kept for reuse.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(patterns, 0, size, null);
+        Arrays.fill(usages, 0, size, 0);
+        size = 0;
+        generation++;
+    }
+
+    /**
+     * Get the generation of the code table. It changes each time a pattern is
+     * added, which is when the residual database is rewritten, and when the
+     * code table is cleared.
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Check that a slot id is valid
+     * @param slot the slot id
+     */
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot: " + slot + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CoverKernel calculates the compressed size of a database covered by a code
+ * table, as done by deleteAndCalculateSizeInBits in the HMP runners.
+ *
+ * Each transaction is copied to a reusable buffer. The patterns of the code table
+ * are then tested in order, and each pattern contained in the remaining items is
+ * counted and removed. The usage of each pattern is counted in an int array
+ * indexed by the slot of the pattern in the code table, and the items of a
+ * pattern are removed by an in-place merge of the two sorted arrays. Once the
+ * buffers have grown to the longest transaction and the code table size, an
+ * evaluation of a list does not allocate any object, and an evaluation of a
+ * TransactionStore only allocates the visitor of its scan(), so that a store kept
+ * on disk is read sequentially.
+ *
+ * Before the merge, a pattern is tested against the signature of the
+ * transaction: a 64-bit word with one bit set per item, chosen by a hash of the
+ * item. A transaction whose signature lacks a bit of the pattern cannot contain
+ * it, so most failing tests are decided by a single AND. Removing items leaves
+ * the signature with extra bits, which only makes the test less selective, so the
+ * signature of the buffer is not calculated again after a removal.
+ *
+ * A kernel is not thread-safe: each thread must use its own kernel.
+ */
+public class CoverKernel {
+
+    /** Reusable buffer holding the remaining items of the current transaction */
+    private int[] buffer = new int[500];
+    /** Usage of each code table slot during the last evaluation */
+    private int[] usage = new int[16];
+    /** Number of slots of the code table used in the last evaluation */
+    private int usageLength = 0;
+    /** Signature of each code table slot during the last evaluation */
+    private long[] patternSignatures = new long[16];
+    /** Size in bits of the items not covered so far, during the scan of a store */
+    private int uncoveredSizeInBits;
+
+    /**
+     * Calculates the compressed size of a database using a code table
+     * @param database a list of sorted transactions
+     * @param codeTable the patterns of the code table, in cover order
+     * @return the size of the remaining items plus the codes of the used patterns
+     */
+    public int coverSizeInBits(List<int[]> database, List<int[]> codeTable) {
+        resetUsage(codeTable.size());
+        int totalSizeInBits = coverSizeInBits(database, 0, database.size(), codeTable, usage);
+        return totalSizeInBits + codeSizeInBits(codeTable, usage);
+    }
+
+    /**
+     * Calculates the compressed size of a weighted database using a code table
+     * @param database the distinct transactions and their weights
+     * @param codeTable the patterns of the code table, in cover order
+     * @return the size of the remaining items plus the codes of the used patterns
+     */
+    public int coverSizeInBits(TransactionStore database, List<int[]> codeTable) {
+        resetUsage(codeTable.size());
+        int totalSizeInBits = coverSizeInBits(database, 0, database.size(), codeTable, usage);
+        return totalSizeInBits + codeSizeInBits(codeTable, usage);
+    }
+
+    /**
+     * Get the usage of a code table slot computed by the last evaluation
+     * @param slot the slot id
+     * @return the number of transactions covered by the pattern of this slot
+     */
+    public int getUsage(int slot) {
+        if (slot < 0 || slot >= usageLength) {
+            throw new IndexOutOfBoundsException("Slot: " + slot + ", Size: " + usageLength);
+        }
+        return usage[slot];
+    }
+
+    /**
+     * Make sure that the usage array can hold a code table and set it to zero
+     * @param codeTableSize the number of patterns in the code table
+     */
+    private void resetUsage(int codeTableSize) {
+        if (usage.length < codeTableSize) {
+            usage = new int[Math.max(codeTableSize, usage.length * 2)];
+        }
+        Arrays.fill(usage, 0, codeTableSize, 0);
+        usageLength = codeTableSize;
+    }
+
+    /**
+     * Cover a range of transactions and count the usage of each code table slot.
+     * @param database a list of sorted transactions
+     * @param from the first transaction (inclusive)
+     * @param to the last transaction (exclusive)
+     * @param codeTable the patterns of the code table, in cover order
+     * @param usage the usage array to increment, indexed by slot
+     * @return the size in bits of the items that are not covered
+     */
+    int coverSizeInBits(List<int[]> database, int from, int to, List<int[]> codeTable, int[] usage) {
+        int codeTableSize = codeTable.size();
+        long[] signatures = signatures(codeTable);
+        int totalSizeInBits = 0;
+        for (int tid = from; tid < to; tid++) {
+            int[] transaction = database.get(tid);
+            if (buffer.length < transaction.length) {
+                buffer = new int[Math.max(transaction.length * 2, buffer.length)];
+            }
+            System.arraycopy(transaction, 0, buffer, 0, transaction.length);
+            int length = transaction.length;
+            long signature = signature(buffer, 0, length);
+
+            // for each pattern, in the order of the code table
+            for (int slot = 0; slot < codeTableSize; slot++) {
+                int[] pattern = codeTable.get(slot);
+                if (length >= pattern.length && mayContain(signature, signatures[slot])
+                        && containsAll(buffer, length, pattern)) {
+                    usage[slot]++;
+                    length = removePattern(buffer, length, pattern);
+                }
+            }
+            totalSizeInBits += length * Integer.SIZE;
+        }
+        return totalSizeInBits;
+    }
+
+    /**
+     * Cover a range of distinct transactions and count the usage of each code table
+     * slot. Each transaction counts as many times as its weight.
+     * @param database the distinct transactions and their weights
+     * @param from the first transaction (inclusive)
+     * @param to the last transaction (exclusive)
+     * @param codeTable the patterns of the code table, in cover order
+     * @param usage the usage array to increment, indexed by slot
+     * @return the size in bits of the items that are not covered
+     */
+    int coverSizeInBits(TransactionStore database, int from, int to, List<int[]> codeTable, int[] usage) {
+        int codeTableSize = codeTable.size();
+        long[] signatures = signatures(codeTable);
+        if (buffer.length < database.getMaxLength()) {
+            buffer = new int[Math.max(database.getMaxLength(), buffer.length * 2)];
+        }
+        uncoveredSizeInBits = 0;
+        database.scan(from, to, buffer, (tid, items, length) -> {
+            int weight = database.getWeight(tid);
+            long signature = signature(items, 0, length);
+
+            // for each pattern, in the order of the code table
+            for (int slot = 0; slot < codeTableSize; slot++) {
+                int[] pattern = codeTable.get(slot);
+                if (length >= pattern.length && mayContain(signature, signatures[slot])
+                        && containsAll(items, length, pattern)) {
+                    usage[slot] += weight;
+                    length = removePattern(items, length, pattern);
+                }
+            }
+            uncoveredSizeInBits += length * Integer.SIZE * weight;
+            return true;
+        });
+        return uncoveredSizeInBits;
+    }
+
+    /**
+     * Calculates the size of the codes of the patterns that are used
+     * @param codeTable the patterns of the code table
+     * @param usage the usage of each slot
+     * @return the size in bits
+     */
+    static int codeSizeInBits(List<int[]> codeTable, int[] usage) {
+        int totalSizeInBits = 0;
+        for (int slot = 0; slot < codeTable.size(); slot++) {
+            if (usage[slot] != 0) {
+                totalSizeInBits += DeltaCoverEvaluator.codeSizeInBits(codeTable.get(slot).length, usage[slot]);
+            }
+        }
+        return totalSizeInBits;
+    }
+
+    /**
+     * Calculates the signature of each pattern of a code table, in a reusable array
+     * @param codeTable the patterns of the code table
+     * @return the signatures, indexed by slot
+     */
+    private long[] signatures(List<int[]> codeTable) {
+        if (patternSignatures.length < codeTable.size()) {
+            patternSignatures = new long[Math.max(codeTable.size(), patternSignatures.length * 2)];
+        }
+        for (int slot = 0; slot < codeTable.size(); slot++) {
+            patternSignatures[slot] = signature(codeTable.get(slot));
+        }
+        return patternSignatures;
+    }
+
+    /**
+     * Calculates the signature of an item
+     * @param item the item
+     * @return a word with the bit of the item set (the top 6 bits of a multiplicative hash)
+     */
+    static long signature(int item) {
+        return 1L << ((item * 0x9E3779B9) >>> 26);
+    }
+
+    /**
+     * Calculates the signature of a pattern
+     * @param pattern the pattern
+     * @return the union of the signatures of its items
+     */
+    static long signature(int[] pattern) {
+        return signature(pattern, 0, pattern.length);
+    }
+
+    /**
+     * Calculates the signature of a range of a buffer
+     * @param list the buffer
+     * @param from the position of the first item of the range
+     * @param to the position after the last item of the range
+     * @return the union of the signatures of the items
+     */
+    static long signature(int[] list, int from, int to) {
+        long signature = 0;
+        for (int i = from; i < to; i++) {
+            signature |= signature(list[i]);
+        }
+        return signature;
+    }
+
+    /**
+     * Check if a transaction can contain a pattern, from their signatures
+     * @param transactionSignature the signature of the transaction (or of a superset of its items)
+     * @param patternSignature the signature of the pattern
+     * @return false if the transaction cannot contain the pattern
+     */
+    static boolean mayContain(long transactionSignature, long patternSignature) {
+        return (transactionSignature & patternSignature) == patternSignature;
+    }
+
+    /**
+     * Check if the first items of a sorted buffer contain all items of a sorted pattern
+     * @param list the buffer
+     * @param listLength the number of valid items in the buffer
+     * @param pattern the pattern
+     * @return true if all items of the pattern are found
+     */
+    static boolean containsAll(int[] list, int listLength, int[] pattern) {
+        return containsAll(list, 0, listLength, pattern);
+    }
+
+    /**
+     * Check if a range of a sorted buffer contains all items of a sorted pattern
+     * @param list the buffer
+     * @param from the position of the first item of the range
+     * @param to the position after the last item of the range
+     * @param pattern the pattern
+     * @return true if all items of the pattern are found
+     */
+    static boolean containsAll(int[] list, int from, int to, int[] pattern) {
+        int i = from;
+        int j = 0;
+        while (i < to && j < pattern.length) {
+            if (list[i] == pattern[j]) {
+                i++;
+                j++;
+            } else if (list[i] < pattern[j]) {
+                i++;
+            } else {
+                return false;
+            }
+        }
+        return j == pattern.length;
+    }
+
+    /**
+     * Remove the items of a sorted pattern from a sorted buffer, in place.
+     * @param transaction the buffer (modified)
+     * @param length the number of valid items in the buffer
+     * @param pattern the pattern
+     * @return the new number of valid items in the buffer
+     */
+    public static int removePattern(int[] transaction, int length, int[] pattern) {
+        return removePattern(transaction, 0, length, pattern);
+    }
+
+    /**
+     * Remove the items of a sorted pattern from a range of a sorted buffer, in place.
+     * The remaining items are moved to the start of the range.
+     * @param transaction the buffer (modified)
+     * @param from the position of the first item of the range
+     * @param length the number of items in the range
+     * @param pattern the pattern
+     * @return the new number of items in the range
+     */
+    public static int removePattern(int[] transaction, int from, int length, int[] pattern) {
+        int pos = from;
+        int j = 0;
+        for (int i = from; i < from + length; i++) {
+            int item = transaction[i];
+            // skip the pattern items that are smaller than the current item
+            while (j < pattern.length && pattern[j] < item) {
+                j++;
+            }
+            if (j < pattern.length && pattern[j] == item) {
+                j++;
+            } else {
+                transaction[pos++] = item;
+            }
+        }
+        return pos - from;
+    }
+}
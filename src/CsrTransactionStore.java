@@ -0,0 +1,465 @@
+import java.util.Arrays;
+import java.util.List;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * CsrTransactionStore stores all the transactions in a single int array, in the
+ * compressed sparse row format: the items of transaction tid start at
+ * offsets[tid], and the transaction has lengths[tid] items. Compared to a List of
+ * int[], there is no object per transaction and a scan reads the items
+ * sequentially, which is faster and uses less memory on large databases.
+ *
+ * Removing a pattern compacts the items of a transaction in place and reduces its
+ * length, so the space of a transaction is never reallocated. Each transaction
+ * has a weight, which is 1 unless the store is built with weights.
+ *
+ * Each transaction also has a 64-bit signature of its items (see
+ * CoverKernel.signature), which rejects most transactions that do not contain a
+ * pattern before the merge of the items. It is calculated again when items are
+ * removed.
+ *
+ * The transactions can be read without copying them with a Cursor:
+ * <pre>
+ * CsrTransactionStore.Cursor cursor = database.cursor();
+ * while (cursor.next()) {
+ *     int[] items = cursor.getItems();
+ *     for (int i = cursor.getOffset(); i < cursor.getEnd(); i++) { ... items[i] ... }
+ * }
+ * </pre>
+ */
+public class CsrTransactionStore implements TransactionStore {
+
+    /** The items of all the transactions */
+    private final int[] items;
+    /** The position of the first item of each transaction (size + 1 values) */
+    private final int[] offsets;
+    /** The current number of items of each transaction */
+    private final int[] lengths;
+    /** The weight of each transaction */
+    private final int[] weights;
+    /** The signature of the items of each transaction */
+    private final long[] signatures;
+    /** Number of transactions of the original database */
+    private final int transactionCount;
+    /** Size in bits of the transactions */
+    private int sizeInBits = 0;
+
+    /**
+     * Constructor
+     * @param database a list of sorted transactions
+     */
+    public CsrTransactionStore(List<int[]> database) {
+        this(copyItems(database), copyOffsets(database), ones(database.size()));
+    }
+
+    /**
+     * Constructor
+     * @param items the items of all the transactions, each transaction sorted
+     * @param offsets the position of the first item of each transaction, followed by items.length
+     * @param weights the weight of each transaction
+     */
+    public CsrTransactionStore(int[] items, int[] offsets, int[] weights) {
+        this.items = items;
+        this.offsets = offsets;
+        this.lengths = new int[weights.length];
+        this.weights = weights;
+        this.signatures = new long[weights.length];
+        int count = 0;
+        for (int tid = 0; tid < weights.length; tid++) {
+            lengths[tid] = offsets[tid + 1] - offsets[tid];
+            signatures[tid] = CoverKernel.signature(items, offsets[tid], offsets[tid + 1]);
+            count += weights[tid];
+            sizeInBits += lengths[tid] * Integer.SIZE * weights[tid];
+        }
+        this.transactionCount = count;
+    }
+
+    /**
+     * Copy constructor. The offsets never change, so they are shared.
+     * @param source the store to copy
+     */
+    private CsrTransactionStore(CsrTransactionStore source) {
+        this.items = source.items.clone();
+        this.offsets = source.offsets;
+        this.lengths = source.lengths.clone();
+        this.weights = source.weights.clone();
+        this.signatures = source.signatures.clone();
+        this.transactionCount = source.transactionCount;
+        this.sizeInBits = source.sizeInBits;
+    }
+
+    private static int[] copyItems(List<int[]> database) {
+        int total = 0;
+        for (int[] transaction : database) {
+            total += transaction.length;
+        }
+        int[] items = new int[total];
+        int position = 0;
+        for (int[] transaction : database) {
+            System.arraycopy(transaction, 0, items, position, transaction.length);
+            position += transaction.length;
+        }
+        return items;
+    }
+
+    private static int[] copyOffsets(List<int[]> database) {
+        int[] offsets = new int[database.size() + 1];
+        for (int tid = 0; tid < database.size(); tid++) {
+            offsets[tid + 1] = offsets[tid] + database.get(tid).length;
+        }
+        return offsets;
+    }
+
+    private static int[] ones(int size) {
+        int[] weights = new int[size];
+        Arrays.fill(weights, 1);
+        return weights;
+    }
+
+    @Override
+    public int size() {
+        return lengths.length;
+    }
+
+    @Override
+    public int getWeight(int tid) {
+        return weights[tid];
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    @Override
+    public int getLength(int tid) {
+        return lengths[tid];
+    }
+
+    @Override
+    public int getItems(int tid, int[] buffer) {
+        System.arraycopy(items, offsets[tid], buffer, 0, lengths[tid]);
+        return lengths[tid];
+    }
+
+    @Override
+    public boolean contains(int tid, int[] pattern) {
+        return contains(tid, pattern, CoverKernel.signature(pattern));
+    }
+
+    /**
+     * Check if a transaction contains all the items of a sorted pattern
+     * @param tid a transaction id
+     * @param pattern the pattern
+     * @param patternSignature the signature of the pattern
+     * @return true if the transaction contains the pattern
+     */
+    public boolean contains(int tid, int[] pattern, long patternSignature) {
+        return lengths[tid] >= pattern.length && CoverKernel.mayContain(signatures[tid], patternSignature)
+                && CoverKernel.containsAll(items, offsets[tid], offsets[tid] + lengths[tid], pattern);
+    }
+
+    @Override
+    public int support(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        int count = 0;
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (contains(tid, pattern, signature)) {
+                count += weights[tid];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int support(int[] pattern, int minSupport) {
+        long signature = CoverKernel.signature(pattern);
+        int remaining = transactionCount;
+        int count = 0;
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (contains(tid, pattern, signature)) {
+                count += weights[tid];
+            }
+            remaining -= weights[tid];
+            if (count + remaining < minSupport) {
+                return count + remaining;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean exists(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (contains(tid, pattern, signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int removeItemset(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        int modified = 0;
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (contains(tid, pattern, signature)) {
+                removeContainedItemset(tid, pattern);
+                modified++;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Remove a sorted pattern from one transaction, in place, if it contains it
+     * @param tid the transaction id
+     * @param pattern the pattern
+     * @return true if the transaction contained the pattern
+     */
+    public boolean removeItemset(int tid, int[] pattern) {
+        if (!contains(tid, pattern)) {
+            return false;
+        }
+        removeContainedItemset(tid, pattern);
+        return true;
+    }
+
+    /**
+     * Remove a sorted pattern from a transaction that contains it, and calculate
+     * the signature of the remaining items
+     * @param tid the transaction id
+     * @param pattern the pattern
+     */
+    private void removeContainedItemset(int tid, int[] pattern) {
+        int length = CoverKernel.removePattern(items, offsets[tid], lengths[tid], pattern);
+        sizeInBits -= (lengths[tid] - length) * Integer.SIZE * weights[tid];
+        lengths[tid] = length;
+        signatures[tid] = CoverKernel.signature(items, offsets[tid], offsets[tid] + length);
+    }
+
+    /**
+     * Merge a transaction into an identical one: the weight of the transaction is
+     * added to the other one, and the transaction becomes empty with weight 0.
+     * The size in bits does not change.
+     * @param tid the transaction to merge
+     * @param target the identical transaction
+     */
+    public void mergeInto(int tid, int target) {
+        weights[target] += weights[tid];
+        weights[tid] = 0;
+        lengths[tid] = 0;
+        signatures[tid] = 0;
+    }
+
+    /**
+     * Check if two transactions have the same items
+     * @param tid1 a transaction id
+     * @param tid2 a transaction id
+     * @return true if the transactions are identical
+     */
+    public boolean sameItems(int tid1, int tid2) {
+        if (lengths[tid1] != lengths[tid2]) {
+            return false;
+        }
+        for (int i = 0; i < lengths[tid1]; i++) {
+            if (items[offsets[tid1] + i] != items[offsets[tid2] + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates a hash code of the items of a transaction
+     * @param tid a transaction id
+     * @return the hash code, as Arrays.hashCode of the items
+     */
+    public int hashItems(int tid) {
+        int hash = 1;
+        for (int i = offsets[tid]; i < offsets[tid] + lengths[tid]; i++) {
+            hash = 31 * hash + items[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public int getSizeInBits() {
+        return sizeInBits;
+    }
+
+    @Override
+    public CsrTransactionStore copy() {
+        return new CsrTransactionStore(this);
+    }
+
+    @Override
+    public int getMaxLength() {
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        return maxLength;
+    }
+
+    @Override
+    public void countItems(MapIntToInt itemFrequency) {
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            for (int i = cursor.getOffset(); i < cursor.getEnd(); i++) {
+                int frequency = itemFrequency.get(items[i]);
+                if (frequency == -1) {
+                    itemFrequency.put(items[i], cursor.getWeight());
+                } else {
+                    itemFrequency.put(items[i], frequency + cursor.getWeight());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void countPairs(AbstractTriangularMatrix matrix) {
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            for (int i = cursor.getOffset(); i < cursor.getEnd(); i++) {
+                for (int j = i + 1; j < cursor.getEnd(); j++) {
+                    matrix.addToCount(items[i], items[j], cursor.getWeight());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a cursor positioned before the first transaction
+     * @return the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor that reads the transactions in order, directly in the item array
+     */
+    public class Cursor {
+        /** The current transaction */
+        private int tid = -1;
+
+        /**
+         * Move to the next transaction
+         * @return false if there is no more transaction
+         */
+        public boolean next() {
+            return ++tid < lengths.length;
+        }
+
+        /**
+         * Get the id of the current transaction
+         * @return the transaction id
+         */
+        public int getTid() {
+            return tid;
+        }
+
+        /**
+         * Get the array holding the items of all transactions (it must not be modified)
+         * @return the item array
+         */
+        public int[] getItems() {
+            return items;
+        }
+
+        /**
+         * Get the position of the first item of the current transaction
+         * @return the offset in the item array
+         */
+        public int getOffset() {
+            return offsets[tid];
+        }
+
+        /**
+         * Get the position after the last item of the current transaction
+         * @return the end offset in the item array
+         */
+        public int getEnd() {
+            return offsets[tid] + lengths[tid];
+        }
+
+        /**
+         * Get the number of items of the current transaction
+         * @return the length
+         */
+        public int getLength() {
+            return lengths[tid];
+        }
+
+        /**
+         * Get the weight of the current transaction
+         * @return the weight
+         */
+        public int getWeight() {
+            return weights[tid];
+        }
+    }
+
+    /**
+     * Builder of a CsrTransactionStore, to which the transactions are appended
+     */
+    public static class Builder {
+        private int[] items;
+        private int[] offsets;
+        private int[] weights;
+        private int size = 0;
+
+        /**
+         * Constructor
+         */
+        public Builder() {
+            this(16, 64);
+        }
+
+        /**
+         * Constructor
+         * @param expectedTransactions the expected number of transactions
+         * @param expectedItems the expected total number of items
+         */
+        public Builder(int expectedTransactions, int expectedItems) {
+            items = new int[Math.max(expectedItems, 1)];
+            offsets = new int[Math.max(expectedTransactions, 1) + 1];
+            weights = new int[Math.max(expectedTransactions, 1)];
+        }
+
+        /**
+         * Append a sorted transaction
+         * @param transaction the array holding the items
+         * @param from the position of the first item
+         * @param length the number of items
+         * @param weight the weight of the transaction
+         * @return this builder
+         */
+        public Builder add(int[] transaction, int from, int length, int weight) {
+            if (size == weights.length) {
+                weights = Arrays.copyOf(weights, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2 + 1);
+            }
+            int end = offsets[size];
+            if (end + length > items.length) {
+                items = Arrays.copyOf(items, Math.max(items.length * 2, end + length));
+            }
+            System.arraycopy(transaction, from, items, end, length);
+            weights[size] = weight;
+            offsets[++size] = end + length;
+            return this;
+        }
+
+        /**
+         * Build the store. The builder must not be used afterwards.
+         * @return the store
+         */
+        public CsrTransactionStore build() {
+            return new CsrTransactionStore(Arrays.copyOf(items, offsets[size]), Arrays.copyOf(offsets, size + 1),
+                    Arrays.copyOf(weights, size));
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import ca.pfv.spmf.datastructures.collections.map.AMapIntToInt;
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * DatasetSnapshot holds a database loaded from a file, with everything that the
+ * HMP runners calculate from it before a run: the item frequencies, the
+ * cumulative weights used to draw items, the sorted items, the longest
+ * transaction and the matrix of pair counts. It is built once, and then shared by
+ * all the runs on the same file.
+ *
+ * The snapshot is never modified. A run takes a copy of what it modifies: the
+ * item frequencies and cumulative weights (copyItemFrequency(),
+ * copyCumulativeWeights()) and the residual database (newResidual()), which is a
+ * copy of the weighted store, so the distinct transactions do not have to be
+ * found again. The weighted store itself is only read, and is shared by the
+ * runs. The pair matrix must only be read; PairCountMatrix.emptyCopy() gives an
+ * empty matrix to count the pairs of a residual database.
+ *
+ * The item frequencies and pair counts can be given by a DatasetStatisticsFile
+ * saved by a previous load of the file, instead of being calculated.
+ *
+ * The pairs are counted in a DenseTriangularMatrix when it fits a memory budget,
+ * otherwise in a SparseTriangularMatrix. With the off-heap option, the weighted
+ * store and the pair matrix are kept in direct buffers (OffHeapTransactionStore,
+ * OffHeapTriangularMatrix), so that the garbage collector does not copy them and
+ * the heap can stay small.
+ */
+public class DatasetSnapshot {
+
+    /** The transactions with identical transactions stored once (read only) */
+    private final TransactionStore weightedTransactions;
+    /** Frequency of each item */
+    private final MapIntToInt itemFrequency = new AMapIntToInt();
+    /** Cumulative frequencies, in the iteration order of itemFrequency */
+    private final List<Map.Entry<Integer, Integer>> cumulativeWeights = new ArrayList<>();
+    /** Sum of the item frequencies */
+    private final int totalWeight;
+    /** Distinct items in ascending order */
+    private final int[] allItems;
+    /** Dictionary of the items */
+    private final ItemDictionary itemDictionary;
+    /** Length of the longest transaction */
+    private final int longestItemSet;
+    /** Count of each pair of items */
+    private final PairCountMatrix pairMatrix;
+
+    /**
+     * Constructor
+     * @param transactions the transactions read from the file (they must not be modified afterwards)
+     * @param densityThreshold the density from which the weighted store uses bitmaps
+     */
+    public DatasetSnapshot(CsrTransactionStore transactions, double densityThreshold) {
+        this(transactions, densityThreshold, TransactionStores.DEFAULT_COMPRESSED_ITEM_THRESHOLD);
+    }
+
+    /**
+     * Constructor
+     * @param transactions the transactions read from the file (they must not be modified afterwards)
+     * @param densityThreshold the density from which the weighted store uses bitmaps
+     * @param compressedItemThreshold the number of items from which a sparse weighted store uses varints
+     */
+    public DatasetSnapshot(CsrTransactionStore transactions, double densityThreshold, long compressedItemThreshold) {
+        this(transactions, densityThreshold, compressedItemThreshold, false, null);
+    }
+
+    /**
+     * Constructor. The snapshot does not keep the transactions read from the file:
+     * it only keeps the weighted store built from them.
+     * @param transactions the transactions read from the file
+     * @param densityThreshold the density from which the weighted store uses bitmaps
+     * @param compressedItemThreshold the number of items from which a sparse weighted store uses varints
+     * @param offHeap true to keep the weighted store and the pair matrices outside of the heap
+     * @param statistics the saved item frequencies and pair counts of the file, or null to calculate them
+     */
+    public DatasetSnapshot(CsrTransactionStore transactions, double densityThreshold, long compressedItemThreshold,
+            boolean offHeap, DatasetStatisticsFile statistics) {
+        this(transactions, densityThreshold, compressedItemThreshold, offHeap,
+                DenseTriangularMatrix.DEFAULT_MEMORY_BUDGET, statistics);
+    }
+
+    /**
+     * Constructor. The snapshot does not keep the transactions read from the file:
+     * it only keeps the weighted store built from them.
+     * @param transactions the transactions read from the file
+     * @param densityThreshold the density from which the weighted store uses bitmaps
+     * @param compressedItemThreshold the number of items from which a sparse weighted store uses varints
+     * @param offHeap true to keep the weighted store and the pair matrices outside of the heap
+     * @param densePairMatrixBudget the memory in bytes up to which the pairs are counted in a dense matrix
+     * @param statistics the saved item frequencies and pair counts of the file, or null to calculate them
+     */
+    public DatasetSnapshot(CsrTransactionStore transactions, double densityThreshold, long compressedItemThreshold,
+            boolean offHeap, long densePairMatrixBudget, DatasetStatisticsFile statistics) {
+        this(transactions,
+                offHeap ? new OffHeapTransactionStore(transactions)
+                        : TransactionStores.create(transactions, densityThreshold, compressedItemThreshold),
+                offHeap, densePairMatrixBudget, statistics);
+    }
+
+    /**
+     * Constructor for a database kept on disk. The item frequencies and the pair
+     * counts are calculated by scanning the store, which is also the weighted
+     * store of the snapshot.
+     * @param transactions the transactions (they must not be modified afterwards)
+     * @param offHeap true to keep the pair matrices outside of the heap
+     * @param statistics the saved item frequencies and pair counts of the file, or null to calculate them
+     */
+    public DatasetSnapshot(StreamingTransactionStore transactions, boolean offHeap,
+            DatasetStatisticsFile statistics) {
+        this(transactions, offHeap, DenseTriangularMatrix.DEFAULT_MEMORY_BUDGET, statistics);
+    }
+
+    /**
+     * Constructor for a database kept on disk. The item frequencies and the pair
+     * counts are calculated by scanning the store, which is also the weighted
+     * store of the snapshot.
+     * @param transactions the transactions (they must not be modified afterwards)
+     * @param offHeap true to keep the pair matrices outside of the heap
+     * @param densePairMatrixBudget the memory in bytes up to which the pairs are counted in a dense matrix
+     * @param statistics the saved item frequencies and pair counts of the file, or null to calculate them
+     */
+    public DatasetSnapshot(StreamingTransactionStore transactions, boolean offHeap, long densePairMatrixBudget,
+            DatasetStatisticsFile statistics) {
+        this(transactions, transactions, offHeap, densePairMatrixBudget, statistics);
+    }
+
+    /**
+     * Constructor
+     * @param transactions the transactions, from which the counts are calculated
+     * @param weightedTransactions the store used by the runs
+     * @param offHeap true to keep the pair matrices outside of the heap
+     * @param densePairMatrixBudget the memory in bytes up to which the pairs are counted in a dense matrix
+     * @param statistics the saved item frequencies and pair counts of the file, or null to calculate them
+     */
+    private DatasetSnapshot(TransactionStore transactions, TransactionStore weightedTransactions, boolean offHeap,
+            long densePairMatrixBudget, DatasetStatisticsFile statistics) {
+        this.weightedTransactions = weightedTransactions;
+
+        // Item frequencies, in the order of the transactions
+        if (statistics != null) {
+            statistics.fillItemFrequency(itemFrequency);
+        } else {
+            transactions.countItems(itemFrequency);
+        }
+        itemDictionary = new ItemDictionary(itemFrequency);
+
+        // Pair counts, in a matrix chosen from the number of items
+        if (offHeap) {
+            pairMatrix = new OffHeapTriangularMatrix();
+        } else if (DenseTriangularMatrix.fits(itemDictionary.size(), densePairMatrixBudget)) {
+            pairMatrix = new DenseTriangularMatrix(itemDictionary);
+        } else {
+            pairMatrix = new SparseTriangularMatrix();
+        }
+        if (statistics != null) {
+            statistics.fillPairCounts(pairMatrix);
+        } else {
+            transactions.countPairs(pairMatrix);
+        }
+        longestItemSet = transactions.getMaxLength();
+
+        allItems = new int[itemFrequency.size()];
+        int index = 0;
+        int weight = 0;
+        MapIntToInt.EntryIterator iter = itemFrequency.iterator();
+        while (iter.hasNext()) {
+            MapIntToInt.MapEntryIntToInt entry = iter.next();
+            allItems[index++] = entry.getKey();
+            weight += entry.getValue();
+            cumulativeWeights.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), weight));
+        }
+        totalWeight = weight;
+        Arrays.sort(allItems);
+    }
+
+    /**
+     * Get the weighted store of the transactions
+     * @return the store (must not be modified)
+     */
+    public TransactionStore getWeightedTransactions() {
+        return weightedTransactions;
+    }
+
+    /**
+     * Create a residual database for a run
+     * @return a copy of the weighted store, that the run can modify
+     */
+    public TransactionStore newResidual() {
+        return weightedTransactions.copy();
+    }
+
+    /**
+     * Create a copy of the item frequencies. The copy is iterated in the same order
+     * as a map built from the transactions.
+     * @return the copy
+     */
+    public MapIntToInt copyItemFrequency() {
+        MapIntToInt copy = new AMapIntToInt();
+        MapIntToInt.EntryIterator iter = itemFrequency.iterator();
+        while (iter.hasNext()) {
+            MapIntToInt.MapEntryIntToInt entry = iter.next();
+            copy.put(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * Create a copy of the cumulative weights
+     * @return the copy, in the iteration order of the item frequencies
+     */
+    public List<Map.Entry<Integer, Integer>> copyCumulativeWeights() {
+        return new ArrayList<>(cumulativeWeights);
+    }
+
+    /**
+     * Get the cumulative weights
+     * @return the cumulative weights (read only)
+     */
+    public List<Map.Entry<Integer, Integer>> getCumulativeWeights() {
+        return Collections.unmodifiableList(cumulativeWeights);
+    }
+
+    /**
+     * Get the sum of the item frequencies
+     * @return the total weight
+     */
+    public int getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Get the distinct items
+     * @return the items in ascending order (must not be modified)
+     */
+    public int[] getAllItems() {
+        return allItems;
+    }
+
+    /**
+     * Get the dictionary of the items
+     * @return the dictionary
+     */
+    public ItemDictionary getItemDictionary() {
+        return itemDictionary;
+    }
+
+    /**
+     * Get the length of the longest transaction
+     * @return the length
+     */
+    public int getLongestItemSet() {
+        return longestItemSet;
+    }
+
+    /**
+     * Get the count of each pair of items in the transactions
+     * @return the matrix (must not be modified)
+     */
+    public PairCountMatrix getPairMatrix() {
+        return pairMatrix;
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * DatasetStatisticsFile is a sidecar file holding the item frequencies and the
+ * pair counts of a text dataset, so that they are not calculated again each time
+ * the dataset is loaded. Counting the pairs takes a time quadratic in the length
+ * of the transactions, which is most of the loading time on long transactions.
+ *
+ * The file records the length, the modification time and a 64-bit hash of the
+ * content of the text file from which it was built, and it is only used while
+ * they have not changed.
+ *
+ * The file contains, in big-endian order:
+ * <ul>
+ * <li>a header: magic number, version, length, modification time and hash of the
+ * text file, number of items and number of pairs;</li>
+ * <li>the items and then their frequencies, in the iteration order of the map of
+ * the frequencies;</li>
+ * <li>the first items, the second items and the counts of the pairs, in the order
+ * of PairCountMatrix.getAllPatternsWithOccurrences().</li>
+ * </ul>
+ * The maps are filled again in the same order, so they are iterated in the same
+ * order as maps built from the transactions, and the runs give the same results.
+ */
+public class DatasetStatisticsFile {
+
+    /** Magic number at the start of the file ("HMPS") */
+    private static final int MAGIC = 0x484D5053;
+    /** Version of the format */
+    private static final int VERSION = 1;
+    /** Size of the header in bytes */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES;
+    /** Extension added to the name of the text file */
+    public static final String EXTENSION = ".hmps";
+    /** Number of bytes of the text file mapped at once to calculate its hash */
+    private static final long HASH_CHUNK_SIZE = 1 << 30;
+
+    /** The items, in the iteration order of their frequencies */
+    private final int[] items;
+    /** The frequency of each item */
+    private final int[] frequencies;
+    /** The first item of each pair */
+    private final int[] firstItems;
+    /** The second item of each pair */
+    private final int[] secondItems;
+    /** The count of each pair */
+    private final int[] pairCounts;
+
+    private DatasetStatisticsFile(int[] items, int[] frequencies, int[] firstItems, int[] secondItems,
+            int[] pairCounts) {
+        this.items = items;
+        this.frequencies = frequencies;
+        this.firstItems = firstItems;
+        this.secondItems = secondItems;
+        this.pairCounts = pairCounts;
+    }
+
+    /**
+     * Get the statistics file corresponding to a text dataset
+     * @param textFile the text file
+     * @return the statistics file, in the same directory
+     */
+    public static File statisticsFileFor(File textFile) {
+        return new File(textFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Load the statistics of a text dataset, if they exist and are up to date
+     * @param textFile the text file
+     * @return the statistics, or null if there is no valid statistics file for the current text file
+     */
+    public static DatasetStatisticsFile readIfUpToDate(File textFile) {
+        File statisticsFile = statisticsFileFor(textFile);
+        if (!statisticsFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(statisticsFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != textFile.length() || buffer.getLong() != textFile.lastModified()
+                    || buffer.getLong() != contentHash(textFile)) {
+                return null;
+            }
+            int itemCount = buffer.getInt();
+            int pairCount = buffer.getInt();
+            if (itemCount < 0 || pairCount < 0
+                    || buffer.remaining() != (2L * itemCount + 3L * pairCount) * Integer.BYTES) {
+                return null;
+            }
+            IntBuffer ints = buffer.asIntBuffer();
+            int[] items = new int[itemCount];
+            int[] frequencies = new int[itemCount];
+            int[] firstItems = new int[pairCount];
+            int[] secondItems = new int[pairCount];
+            int[] pairCounts = new int[pairCount];
+            ints.get(items);
+            ints.get(frequencies);
+            ints.get(firstItems);
+            ints.get(secondItems);
+            ints.get(pairCounts);
+            return new DatasetStatisticsFile(items, frequencies, firstItems, secondItems, pairCounts);
+        } catch (IOException | BufferUnderflowException e) {
+            // an unreadable or truncated file is ignored, the statistics are calculated instead
+            return null;
+        }
+    }
+
+    /**
+     * Write the statistics of a text dataset. Nothing is written if the text file
+     * changed since it was read. The file is written under a temporary name and
+     * then renamed, so that a partial file is never read.
+     * @param itemFrequency the frequency of each item
+     * @param pairMatrix the count of each pair of items
+     * @param textFile the text file
+     * @param textLength the length of the text file when it was read
+     * @param textLastModified the modification time of the text file when it was read
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(MapIntToInt itemFrequency, PairCountMatrix pairMatrix, File textFile, long textLength,
+            long textLastModified) throws IOException {
+        if (textFile.length() != textLength || textFile.lastModified() != textLastModified) {
+            return;
+        }
+        long hash = contentHash(textFile);
+        List<Pair> pairs = pairMatrix.getAllPatternsWithOccurrences();
+
+        File statisticsFile = statisticsFileFor(textFile);
+        File temporaryFile = new File(statisticsFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(textLength);
+            output.writeLong(textLastModified);
+            output.writeLong(hash);
+            output.writeInt(itemFrequency.size());
+            output.writeInt(pairs.size());
+            MapIntToInt.EntryIterator iter = itemFrequency.iterator();
+            while (iter.hasNext()) {
+                output.writeInt(iter.next().getKey());
+            }
+            iter = itemFrequency.iterator();
+            while (iter.hasNext()) {
+                output.writeInt(iter.next().getValue());
+            }
+            for (Pair pair : pairs) {
+                output.writeInt(pair.pattern[0]);
+            }
+            for (Pair pair : pairs) {
+                output.writeInt(pair.pattern[1]);
+            }
+            for (Pair pair : pairs) {
+                output.writeInt(pair.count);
+            }
+        }
+        Files.move(temporaryFile.toPath(), statisticsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Calculates a 64-bit hash of the content of a file
+     * @param file the file
+     * @return the hash
+     * @throws IOException if the file cannot be read
+     */
+    static long contentHash(File file) throws IOException {
+        long hash = 0xCBF29CE484222325L;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_CHUNK_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_CHUNK_SIZE, size - position));
+                while (buffer.remaining() >= Long.BYTES) {
+                    hash = Long.rotateLeft((hash ^ buffer.getLong()) * 0x9E3779B97F4A7C15L, 31);
+                }
+                while (buffer.hasRemaining()) {
+                    hash = Long.rotateLeft((hash ^ buffer.get()) * 0x9E3779B97F4A7C15L, 31);
+                }
+            }
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Fill an empty map with the item frequencies, in the order in which they were saved
+     * @param itemFrequency the map receiving the frequency of each item
+     */
+    public void fillItemFrequency(MapIntToInt itemFrequency) {
+        for (int i = 0; i < items.length; i++) {
+            itemFrequency.put(items[i], frequencies[i]);
+        }
+    }
+
+    /**
+     * Fill an empty matrix with the pair counts, in the order in which they were saved
+     * @param pairMatrix the matrix receiving the count of each pair of items
+     */
+    public void fillPairCounts(AbstractTriangularMatrix pairMatrix) {
+        for (int p = 0; p < pairCounts.length; p++) {
+            pairMatrix.setSupport(firstItems[p], secondItems[p], pairCounts[p]);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * DeltaCoverEvaluator scores a single candidate pattern against a residual
+ * database, i.e. a database from which every pattern already accepted in the
+ * code table has been removed with removeItemset.
+ *
+ * In such a database no accepted pattern can cover a transaction anymore, so
+ * covering it with (code table + candidate) only changes the size through the
+ * candidate itself. The new size is therefore the residual size minus the items
+ * covered by the candidate, plus the code of the candidate. This gives the same
+ * result as deleteAndCalculateSizeInBits(residualDatabase, codeTable + candidate)
+ * while testing one pattern per transaction instead of the whole code table.
+ *
+ * The size decreases with the usage of the candidate (once it is used at least
+ * once), so a candidate can only reach a target size if its usage reaches some
+ * minimum. When a target is given, the scan stops as soon as the remaining
+ * transactions cannot bring the usage to this minimum, and the evaluation only
+ * returns a lower bound of the size.
+ */
+public class DeltaCoverEvaluator {
+
+    /** The residual database (accepted patterns already removed) */
+    private final TransactionStore residualDatabase;
+    /** Usage of the last evaluated candidate (an upper bound if the evaluation was stopped) */
+    private int lastUsage;
+    /** False if the last evaluation was stopped before the end of the scan */
+    private boolean lastEvaluationExact = true;
+
+    /**
+     * Constructor
+     * @param residualDatabase the residual database to evaluate candidates against
+     */
+    public DeltaCoverEvaluator(TransactionStore residualDatabase) {
+        this.residualDatabase = residualDatabase;
+    }
+
+    /**
+     * Get the size in bits of the residual database
+     * @return the size in bits (32 bits per item)
+     */
+    public int getResidualSizeInBits() {
+        return residualDatabase.getSizeInBits();
+    }
+
+    /**
+     * Get the number of residual transactions covered by the last evaluated candidate
+     * @return the usage of the last candidate
+     */
+    public int getLastUsage() {
+        return lastUsage;
+    }
+
+    /**
+     * Check if the last evaluation returned the exact size
+     * @return false if the last evaluation was stopped and returned a lower bound
+     */
+    public boolean isLastEvaluationExact() {
+        return lastEvaluationExact;
+    }
+
+    /**
+     * Calculates the compressed size of the residual database if the candidate is
+     * added to the code table.
+     * @param candidate a sorted pattern
+     * @return the total size in bits, including the code of the candidate
+     */
+    public int sizeInBitsWith(int[] candidate) {
+        return residualDatabase.getSizeInBits() + sizeDelta(candidate);
+    }
+
+    /**
+     * Calculates the compressed size of the residual database if the candidate is
+     * added to the code table, unless it cannot be at most a target size.
+     * @param candidate a sorted pattern
+     * @param maxSizeInBits the target size
+     * @param usageUpperBound an upper bound of the usage of the candidate, such as
+     *                        the smallest frequency of its items
+     * @return the exact size if it is at most maxSizeInBits, otherwise a lower bound
+     *         of the size that is larger than maxSizeInBits
+     */
+    public int sizeInBitsWith(int[] candidate, int maxSizeInBits, int usageUpperBound) {
+        int residualSizeInBits = residualDatabase.getSizeInBits();
+        int maxDelta = maxSizeInBits - residualSizeInBits;
+        if (maxDelta >= 0) {
+            // an unused candidate already reaches the target
+            lastEvaluationExact = true;
+            return sizeInBitsWith(candidate);
+        }
+        if (usageUpperBound < 1 || sizeDelta(candidate.length, usageUpperBound) > maxDelta) {
+            lastEvaluationExact = false;
+            lastUsage = Math.max(usageUpperBound, 0);
+            return residualSizeInBits + Math.min(0, sizeDelta(candidate.length, lastUsage));
+        }
+        // smallest usage that reaches the target (the size decreases with the usage)
+        int low = 1;
+        int high = usageUpperBound;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sizeDelta(candidate.length, middle) <= maxDelta) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        int usage = residualDatabase.support(candidate, low);
+        lastUsage = usage;
+        lastEvaluationExact = usage >= low;
+        if (!lastEvaluationExact) {
+            return residualSizeInBits + Math.min(0, sizeDelta(candidate.length, usage));
+        }
+        return residualSizeInBits + sizeDelta(candidate.length, usage);
+    }
+
+    /**
+     * Calculates the change of the compressed size caused by adding the candidate
+     * to the code table. Only the candidate is tested on each transaction.
+     * @param candidate a sorted pattern
+     * @return the size change in bits (negative if the candidate compresses the data)
+     */
+    public int sizeDelta(int[] candidate) {
+        int usage = residualDatabase.support(candidate);
+        lastUsage = usage;
+        lastEvaluationExact = true;
+        return sizeDelta(candidate.length, usage);
+    }
+
+    /**
+     * Calculates the size change of adding a pattern of a given length that covers
+     * a given number of residual transactions.
+     * @param patternLength the number of items in the pattern
+     * @param usage the number of transactions covered by the pattern
+     * @return the size change in bits
+     */
+    public static int sizeDelta(int patternLength, int usage) {
+        if (usage == 0) {
+            return 0;
+        }
+        return codeSizeInBits(patternLength, usage) - usage * patternLength * Integer.SIZE;
+    }
+
+    /**
+     * Calculates the size of the code of a pattern, as done by deleteAndCalculateSizeInBits
+     * @param patternLength the number of items in the pattern
+     * @param usage the number of transactions covered by the pattern (> 0)
+     * @return the size in bits of the usage counter plus the items of the pattern
+     */
+    public static int codeSizeInBits(int patternLength, int usage) {
+        // Calculate the bit size for the usage using logarithm base 2
+        int valueBitSize = (int) Math.ceil(Math.log(usage + 1) / Math.log(2));
+        return valueBitSize + patternLength * Integer.SIZE;
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DenseTriangularMatrix counts the pairs of items in a flat array holding the
+ * upper triangle of an n x n matrix, where n is the number of items of an
+ * ItemDictionary. An item is replaced by its index in the ascending order of the
+ * items, and the cell of a pair is found by index arithmetic, without boxing or
+ * hashing. The diagonal is kept, since a transaction can repeat an item. The
+ * matrix takes 4 bytes for each of the n(n+1)/2 cells, so it is only used when
+ * this fits a memory budget (see fits()). The index of an item is read in a table
+ * indexed by item when the range of the items is at most twice the number of
+ * cells, even if the dictionary itself uses a binary search.
+ *
+ * getAllPatternsWithOccurrences() returns the pairs with a count other than 0, in
+ * ascending order of their items.
+ */
+public class DenseTriangularMatrix implements PairCountMatrix {
+
+    /** Default memory budget of the matrix in bytes */
+    public static final long DEFAULT_MEMORY_BUDGET = 16L << 20;
+    /** Bytes of a cell */
+    private static final int BYTES_PER_CELL = Integer.BYTES;
+
+    /** The items of the matrix */
+    private final ItemDictionary dictionary;
+    /** Number of items */
+    private final int itemCount;
+    /** Smallest item, the origin of the lookup table */
+    private final int minItem;
+    /** Index of each item - minItem (-1 if absent), or null to use the dictionary */
+    private final int[] lookup;
+    /** The count of each pair, row by row */
+    private final int[] counts;
+
+    /**
+     * Constructor
+     * @param dictionary the items of the matrix (see fits())
+     */
+    public DenseTriangularMatrix(ItemDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.itemCount = dictionary.size();
+        long cells = cellCount(itemCount);
+        if (cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many items for a dense matrix: " + itemCount);
+        }
+        counts = new int[(int) cells];
+        minItem = itemCount == 0 ? 0 : dictionary.getItem(0);
+        long range = itemCount == 0 ? 0 : (long) dictionary.getItem(itemCount - 1) - minItem + 1;
+        if (itemCount > 0 && range <= 2 * cells) {
+            lookup = new int[(int) range];
+            Arrays.fill(lookup, -1);
+            for (int index = 0; index < itemCount; index++) {
+                lookup[dictionary.getItem(index) - minItem] = index;
+            }
+        } else {
+            lookup = null;
+        }
+    }
+
+    /**
+     * Get the number of cells of the upper triangle of a matrix, with its diagonal
+     * @param itemCount the number of items
+     * @return the number of cells
+     */
+    private static long cellCount(int itemCount) {
+        return (long) itemCount * (itemCount + 1) / 2;
+    }
+
+    /**
+     * Check if a dense matrix of some items fits a memory budget
+     * @param itemCount the number of items
+     * @param memoryBudget the memory budget in bytes
+     * @return true if the matrix takes at most memoryBudget bytes
+     */
+    public static boolean fits(int itemCount, long memoryBudget) {
+        long cells = cellCount(itemCount);
+        return cells <= Integer.MAX_VALUE && cells * BYTES_PER_CELL <= memoryBudget;
+    }
+
+    /**
+     * Get the cell of a pair of indices
+     * @param a an index
+     * @param b an index at least a
+     * @return the position of the cell in the array
+     */
+    private int cell(int a, int b) {
+        // the rows before a hold itemCount + (itemCount - 1) + ... + (itemCount - a + 1) cells
+        return (int) ((long) a * itemCount - (long) a * (a - 1) / 2) + (b - a);
+    }
+
+    /**
+     * Get the index of an item
+     * @param item an item
+     * @return the index, or -1 if the item is not in the matrix
+     */
+    private int find(int item) {
+        if (lookup != null) {
+            long offset = (long) item - minItem;
+            return offset < 0 || offset >= lookup.length ? -1 : lookup[(int) offset];
+        }
+        return dictionary.indexOf(item);
+    }
+
+    /**
+     * Get the index of an item
+     * @param item an item of the matrix
+     * @return the index
+     */
+    private int indexOf(int item) {
+        int index = find(item);
+        if (index < 0) {
+            throw new IllegalArgumentException("Item " + item + " is not in the dense matrix");
+        }
+        return index;
+    }
+
+    /**
+     * Get the cell of a pair of items
+     * @param i an item of the matrix
+     * @param j an item of the matrix
+     * @return the position of the cell in the array
+     */
+    private int cellOf(int i, int j) {
+        int a = indexOf(i);
+        int b = indexOf(j);
+        return a <= b ? cell(a, b) : cell(b, a);
+    }
+
+    @Override
+    public void incrementCount(int i, int j) {
+        counts[cellOf(i, j)]++;
+    }
+
+    @Override
+    public void addToCount(int i, int j, int count) {
+        counts[cellOf(i, j)] += count;
+    }
+
+    @Override
+    public int getSupportForItems(int i, int j) {
+        int a = find(i);
+        int b = find(j);
+        if (a < 0 || b < 0) {
+            return 0;
+        }
+        return a <= b ? counts[cell(a, b)] : counts[cell(b, a)];
+    }
+
+    @Override
+    public void setSupport(Integer i, Integer j, int support) {
+        setSupport(i.intValue(), j.intValue(), support);
+    }
+
+    @Override
+    public void setSupport(int i, int j, int support) {
+        counts[cellOf(i, j)] = support;
+    }
+
+    @Override
+    public List<Pair> getAllPatternsWithOccurrences() {
+        List<Pair> patterns = new ArrayList<>();
+        int cell = 0;
+        for (int a = 0; a < itemCount; a++) {
+            int item1 = dictionary.getItem(a);
+            for (int b = a; b < itemCount; b++, cell++) {
+                if (counts[cell] != 0) {
+                    patterns.add(new Pair(new int[] { item1, dictionary.getItem(b) }, counts[cell]));
+                }
+            }
+        }
+        return patterns;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    @Override
+    public DenseTriangularMatrix emptyCopy() {
+        return new DenseTriangularMatrix(dictionary);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder temp = new StringBuilder();
+        for (Pair pair : getAllPatternsWithOccurrences()) {
+            temp.append(pair.pattern[0]).append(' ').append(pair.pattern[1]).append(": ").append(pair.count)
+                    .append('\n');
+        }
+        return temp.toString();
+    }
+}
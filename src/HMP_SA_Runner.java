@@ -19,13 +19,41 @@ public class HMP_SA_Runner {
     static final double COOLING_RATE = 0.8;
     /** Minimum compression improvement ratio for pattern acceptance */
     static final double IMPROVEMENT_THRESHOLD = 0.001;
+    /** Number of threads used to calculate the compressed size of a database */
+    static final int COVER_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    /** Databases with fewer transactions than this are covered by a single thread */
+    static final int PARALLEL_COVER_THRESHOLD = 10000;
+    /** Number of threads used to parse a dataset file */
+    static final int PARSER_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    /** Residual databases whose density reaches this value are stored as bitmaps */
+    static final double BITMAP_DENSITY_THRESHOLD = TransactionStores.DEFAULT_DENSITY_THRESHOLD;
+    /** Sparse residual databases with at least this number of items are stored as delta-encoded varints */
+    static final long COMPRESSED_ITEM_THRESHOLD = TransactionStores.DEFAULT_COMPRESSED_ITEM_THRESHOLD;
+    /** Keep the database and the pair matrix outside of the heap */
+    static final boolean OFF_HEAP_STORAGE = false;
+    /** Count the pairs of items in a dense matrix when it takes at most this number of bytes */
+    static final long DENSE_PAIR_MATRIX_BUDGET = DenseTriangularMatrix.DEFAULT_MEMORY_BUDGET;
+    /** Keep the database on disk and scan it for each pass, for databases larger than the memory */
+    static final boolean STREAMING_STORAGE = false;
+    /** Size in bytes of the window through which a database kept on disk is read */
+    static final int STREAMING_WINDOW_SIZE = StreamingTransactionStore.DEFAULT_WINDOW_SIZE;
+    /** Save the item frequencies and pair counts of a dataset next to it, and load them on the next runs */
+    static final boolean STATISTICS_CACHE = true;
+    /** Residual databases with at least this number of transactions are first scored on a sample */
+    static final int SAMPLING_MIN_TRANSACTIONS = 50000;
+    /** Number of transactions of the sample */
+    static final int SAMPLE_SIZE = 5000;
+    /** z value of the upper confidence bound estimated on the sample */
+    static final double SAMPLE_CONFIDENCE_Z = 3.0;
     // endregion
 
     // region Global Data Structures
-    /** Code table storing accepted compression patterns */
-    static ArrayList<int[]> codetable = new ArrayList<>();
+    /** Code table storing accepted compression patterns and their occurrence counts */
+    static CodeTable codetable = new CodeTable();
     /** Sorted array of all unique items in the database */
     static int[] allItems = null;
+    /** Dictionary of the items of the database, giving the index of an item in allItems */
+    static ItemDictionary itemDictionary = null;
     /** Frequency map for individual items */
     static MapIntToInt itemFrequency;
     /** Length of the longest transaction in the database */
@@ -34,17 +62,21 @@ public class HMP_SA_Runner {
     static int totalWeight = 0;
     /** Cumulative weights for item selection */
     static List<Map.Entry<Integer, Integer>> cumulativeWeights = null;
-    /** Frequency map for stored patterns */
-    static Map<int[], Integer> itemsetCount = new HashMap<>();
     /** Triangular matrix for pairwise item co-occurrences */
-    static SparseTriangularMatrix matrix = null;
-    /** Reusable buffer for transaction processing */
-    static int[] BUFFER = new int[500];
+    static PairCountMatrix matrix = null;
+    /** True while the matrix is the one of the database snapshot, which must not be modified */
+    static boolean matrixShared = false;
+    /** Reusable cover kernel for calculating compressed sizes */
+    static ParallelCoverKernel coverKernel = new ParallelCoverKernel(COVER_PARALLELISM, PARALLEL_COVER_THRESHOLD);
     /** Random number generator */
     static Random random = new Random(System.currentTimeMillis());
     // endregion
 
 
+    /** Maximum number of candidate evaluations kept in the cache */
+    static final int CANDIDATE_CACHE_SIZE = 10000;
+    /** Maximum number of itemsets known to be absent from the database kept in a cache */
+    static final int NEGATIVE_BORDER_CACHE_SIZE = 100000;
     /** Maximum allowed size for the code table */
     static final int max_code_table_size = 1583;
     public static void main(String[] args) throws IOException {
@@ -65,18 +97,21 @@ public class HMP_SA_Runner {
             // Construct the output file name by appending the base name
             String outputFile = "result_SAMP_" + baseName  + ".txt"; // e.g., "result_SA_Com_yourfile.txt"
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+                // The database is read and analysed once, each run works on its own residual copy
+                DatasetSnapshot snapshot = loadSnapshot(file.getPath());
 
                 for (int run = 1; run <= 10; run++) { // Execute 10 times for the specified file
                     writer.write("Processing file: " + file.getName() + ", Run: " + run + "\n");
                     System.out.println("Processing file: " + file.getName() + ", Run: " + run);
 
 
-                    // Read the database from the file
-                    List<int[]> database = readItemsetsFromFile(file.getPath());
-                    initializeDatabase(database);
+                    // Start from the database as read from the file
+                    initializeDatabase(snapshot);
+                    // Identical transactions are stored once, with their number of occurrences
+                    TransactionStore weightedDatabase = snapshot.getWeightedTransactions();
 
                     // Perform the main algorithm logic (this is the existing code logic)
-                    double initialCompressionSize = calculateSizeInBits(database);
+                    double initialCompressionSize = weightedDatabase.getSizeInBits();
                     double currentCompressionSize = initialCompressionSize;
                     double improveCompressionSize = initialCompressionSize;
 
@@ -96,7 +131,19 @@ public class HMP_SA_Runner {
 
                     Random random = new Random();
 
-                    List<int[]> modifiedDatabase = copyDatabase(database);
+                    // Residual database, stored as bitmaps if it is dense
+                    TransactionStore modifiedDatabase = snapshot.newResidual();
+                    // Scores neighbors against the residual database, where only the new pattern can cover
+                    DeltaCoverEvaluator coverEvaluator = new DeltaCoverEvaluator(modifiedDatabase);
+                    // Large residual databases are first scored on a sample, only promising neighbors are scanned
+                    StratifiedSample sample = modifiedDatabase.getTransactionCount() >= SAMPLING_MIN_TRANSACTIONS
+                            ? new StratifiedSample(modifiedDatabase, SAMPLE_SIZE, SAMPLE_CONFIDENCE_Z, new Random(run))
+                            : null;
+                    // Evaluations of neighbors, valid until the next pattern is accepted in the codetable
+                    CandidateCache candidateCache = new CandidateCache(CANDIDATE_CACHE_SIZE);
+                    // Itemsets absent from the residual database, whose supersets are rejected without a scan
+                    NegativeBorderCache absentFromResidual = new NegativeBorderCache(modifiedDatabase, null,
+                            NEGATIVE_BORDER_CACHE_SIZE);
                     int codeTableTryCount = 0;
                     // Main loop for the simulated annealing process
                     while (codetable.size() < max_code_table_size / 3) {// Control the number of patterns from SA added to the
@@ -109,16 +156,40 @@ public class HMP_SA_Runner {
 
                         int temperatureTryCount = 0;
                         while (temperature > MIN_TEMPERATURE) {
-                            // Try to add a pattern to the codetable
-                            ArrayList<int[]> temp_ct = new ArrayList<>(codetable);
                             // Generate neighbor pattern according to FLIP_NUM
                             int[] newPattern = generateTwoFlipNeighborPattern(pattern);
 
-                            if (isPatternInDatabase(newPattern, modifiedDatabase)) {
+                            // Random number of the acceptance test of a worse neighbor
+                            double acceptanceThreshold = random.nextDouble();
+                            // A neighbor containing an itemset absent from the residual database is not evaluated
+                            CandidateCache.Entry evaluation = null;
+                            if (!absentFromResidual.isKnownAbsent(newPattern)) {
+                                evaluation = candidateCache.get(newPattern, codetable.getGeneration());
+                                int maxAcceptedSize = maxAcceptedSizeInBits(improveCompressionSize, temperature,
+                                        acceptanceThreshold);
+                                if (evaluation == null
+                                        || (!evaluation.isExact() && evaluation.getSizeInBits() <= maxAcceptedSize)) {
+                                    // Size of the residual database if the new pattern is added to the codetable.
+                                    // The scan stops early if the pattern cannot be accepted.
+                                    int usageUpperBound = supportUpperBound(newPattern);
+                                    if (sample != null) {
+                                        sample.evaluate(newPattern);
+                                        usageUpperBound = Math.min(usageUpperBound, sample.getUpperBound());
+                                    }
+                                    int newSize = coverEvaluator.sizeInBitsWith(newPattern, maxAcceptedSize,
+                                            usageUpperBound);
+                                    evaluation = candidateCache.put(newPattern, coverEvaluator.getLastUsage(), newSize,
+                                            coverEvaluator.isLastEvaluationExact(), codetable.getGeneration());
+                                }
+                                if (evaluation.isExact() && evaluation.getSupport() == 0) {
+                                    absentFromResidual.addAbsent(newPattern);
+                                }
+                            }
+
+                            // The pattern must appear in the residual database
+                            if (evaluation != null && evaluation.getSupport() > 0) {
 
-                                // Try to add new pattern to codetable
-                                temp_ct.add(newPattern);
-                                int newCompressionSize = deleteAndCalculateSizeInBits(modifiedDatabase, temp_ct);
+                                int newCompressionSize = evaluation.getSizeInBits();
 
                                 // Calculate the improvement when adding this pattern
                                 double compressionImprovement = (improveCompressionSize - newCompressionSize)
@@ -131,7 +202,7 @@ public class HMP_SA_Runner {
                                     improveCompressionSize = newCompressionSize;
                                     pattern = newPattern;
                                     temperatureTryCount =0;
-                                } else if ( acceptanceProbability > random.nextDouble()) {
+                                } else if (acceptanceProbability > acceptanceThreshold) {
                                     // Accept the new pattern with a certain probability
                                     improveCompressionSize = newCompressionSize;
                                     pattern = newPattern;
@@ -149,24 +220,19 @@ public class HMP_SA_Runner {
                             }
                         }
 
-                        if (isPatternInDatabase(pattern, modifiedDatabase)) {
+                        if (absentFromResidual.exists(pattern)) {
 
+                            // Add the pattern only if it improves the compression enough
                             if (((currentCompressionSize - improveCompressionSize) / initialCompressionSize) > IMPROVEMENT_THRESHOLD) {
                                 codeTableTryCount = 0;
                                 codetable.add(pattern);
-                                modifiedDatabase = deleteItemset(modifiedDatabase, pattern);
+                                modifiedDatabase.removeItemset(pattern);
+                                if (sample != null) {
+                                    sample.removeItemset(pattern);
+                                }
                                 itemFrequency.clear();
                                 cumulativeWeights.clear();
-                                for (int[] transaction : modifiedDatabase) {
-                                    for (int item : transaction) {
-                                        int frequency = itemFrequency.get(item);
-                                        if (frequency == -1) {
-                                            itemFrequency.put(item, 1);
-                                        } else {
-                                            itemFrequency.put(item, frequency + 1);
-                                        }
-                                    }
-                                }
+                                modifiedDatabase.countItems(itemFrequency);
 
                                 cumulativeWeights.clear();
                                 totalWeight = 0;
@@ -188,9 +254,10 @@ public class HMP_SA_Runner {
                         }
                     }
 
-                    for (int[] pattern : codetable) {
-                        int occ = countOccurrencesInDatabase(pattern, database);
-                        itemsetCount.put(pattern, occ);
+                    // Support of every pattern of the codetable, counted together by the store
+                    int[] occurrences = weightedDatabase.supports(codetable);
+                    for (int slot = 0; slot < codetable.size(); slot++) {
+                        codetable.setUsage(slot, occurrences[slot]);
                     }
 
                     //Record the number of patterns from sa
@@ -203,7 +270,7 @@ public class HMP_SA_Runner {
                     List<Pair> length2Patterns = matrix.getAllPatternsWithOccurrences();
 
                     // Sort by number of occurrences in descending order
-                    length2Patterns.sort((entry1, entry2) -> Integer.compare(entry2.count, entry1.count));
+                    length2Patterns.sort(Pair.BY_DECREASING_COUNT);
 
                     // Initialize variables
                     int totalPatterns = length2Patterns.size();
@@ -217,17 +284,17 @@ public class HMP_SA_Runner {
                         int[] pattern = entry.pattern;
                         int count = entry.count;
 
-                        // Add the pattern to the codetable and itemsetCount
+                        // Add the pattern to the codetable with its number of occurrences
                         codetable.add(pattern);
-                        itemsetCount.put(pattern, count);
+                        codetable.setUsage(codetable.size() - 1, count);
 
                         //Update the database and matrix after adding the pattern
-                        modifiedDatabase = deleteItemset(modifiedDatabase, pattern);
+                        modifiedDatabase.removeItemset(pattern);
                         updateMatrix(modifiedDatabase);
 
                         // Recalculate the patterns and sort again after processing the pattern
                         length2Patterns = matrix.getAllPatternsWithOccurrences();
-                        length2Patterns.sort((entry1, entry2) -> Integer.compare(entry2.count, entry1.count));
+                        length2Patterns.sort(Pair.BY_DECREASING_COUNT);
                         totalPatterns = length2Patterns.size();
 
                         // Determine whether the difference between the current compression size and the
@@ -240,15 +307,15 @@ public class HMP_SA_Runner {
 
 
                     // Final compression size calculation
-                    currentCompressionSize = deleteAndCalculateSizeInBits(database, codetable);
+                    currentCompressionSize = deleteAndCalculateSizeInBits(weightedDatabase, codetable);
 
-                    // Clear matrix after each run
-                    matrix.clear();
+                    // Release the matrix of the run, the next run starts from the snapshot
+                    matrix = null;
 
                     // Write the final code table and results to the file
                     writer.write("Final codetable: " + "\n");
-                    for (int[] pattern : codetable) {
-                        writer.write("Pattern: " + Arrays.toString(pattern) + " count: " + itemsetCount.get(pattern));
+                    for (int slot = 0; slot < codetable.size(); slot++) {
+                        writer.write("Pattern: " + Arrays.toString(codetable.get(slot)) + " count: " + codetable.getUsage(slot));
                         writer.newLine();
                     }
                     writer.write("Final codetable size: " + codetable.size() + "\n");
@@ -267,10 +334,13 @@ public class HMP_SA_Runner {
                     writer.write("Memory usage: " + currentMemoryUsage + " MB\n\n");
                     writer.write("SA working: " + sa_work + "\n\n");
                     writer.write("Iterations: " + iterations + "\n\n");
+                    writer.write("Candidate cache hits: " + candidateCache.getHits() + ", misses: "
+                            + candidateCache.getMisses() + "\n\n");
+                    writer.write("Absent itemset cache (residual) hits: " + absentFromResidual.getHits()
+                            + ", misses: " + absentFromResidual.getMisses() + "\n\n");
 
                     // Clear the codetable and related data structures after each run
                     codetable.clear();
-                    itemsetCount.clear();
                     itemFrequency.clear();
                     cumulativeWeights.clear();
                     totalWeight = 0;
@@ -287,153 +357,98 @@ public class HMP_SA_Runner {
     }
 
     /**
-     * Calculates raw database size in bits without compression
+     * Calculates compressed size using current code table
      * @param database Transactional database
-     * @return Total size in bits (32 bits per integer)
+     * @param codeTable Current compression patterns
+     * @return Total size including both residual data and pattern codes
      */
-    public static int calculateSizeInBits(List<int[]> database) {
-//		Map<int[], Integer> patternCount = new HashMap<>();
-
-        // Calculate the size in bits of the modified database
-        int totalSizeInBits = 0;
-
-        for (int[] transaction : database) {
-            // Each integer is 32 bits
-            totalSizeInBits += transaction.length * Integer.SIZE;
-        }
-
-        return totalSizeInBits;
+    public static int deleteAndCalculateSizeInBits(List<int[]> database, List<int[]> codeTable) {
+        // Usage is counted per code table slot and patterns are removed in place, so no object
+        // is allocated per transaction. Large databases are split in chunks covered in parallel.
+        return coverKernel.coverSizeInBits(database, codeTable);
     }
 
-
     /**
-     * Calculates compressed size using current code table
-     * @param database Transactional database
+     * Calculates compressed size of a weighted database using current code table
+     * @param database Distinct transactions with their number of occurrences
      * @param codeTable Current compression patterns
      * @return Total size including both residual data and pattern codes
      */
-    public static int deleteAndCalculateSizeInBits(List<int[]> database, List<int[]> codeTable) {
-
-        Map<PatternKey, Integer> patternCount = new HashMap<>();
-        // Calculate the size in bits of the modified database
-        int totalSizeInBits = 0;
-        // Process each transaction in order
-        for (int[] transaction : database) {
-            // Dynamic expansion mechanism
-            if (BUFFER.length < transaction.length) {
-                BUFFER = new int[Math.max(transaction.length * 2, BUFFER.length)]; // 双倍扩容策略
-            }
+    public static int deleteAndCalculateSizeInBits(TransactionStore database, List<int[]> codeTable) {
+        return coverKernel.coverSizeInBits(database, codeTable);
+    }
 
-            // Copy transactions to buffer (overwrite only necessary parts)
-            System.arraycopy(transaction, 0, BUFFER, 0, transaction.length);
-            int newLength = transaction.length;
-
-            // for each pattern
-            for (int[] pattern : codeTable) {
-                if (newLength >= pattern.length && containsAll(BUFFER, newLength, pattern)) {
-                    // Increment the count for the pattern
-                    PatternKey key = new PatternKey(pattern);
-                    patternCount.put(key, patternCount.getOrDefault(key, 0) + 1);
-                    // Remove the pattern from the transaction
-                    removePatternFromTransaction(BUFFER, newLength, pattern);
-                    newLength = newLength - pattern.length;
-                }
-            }
-            totalSizeInBits += newLength * Integer.SIZE;
+    /**
+     * Calculates the largest size that a neighbor can have to be accepted, i.e. the
+     * largest size giving a compression improvement above IMPROVEMENT_THRESHOLD
+     * @param improveCompressionSize Size of the current pattern
+     * @return The largest accepted size in bits
+     */
+    public static int maxAcceptedSizeInBits(double improveCompressionSize) {
+        long size = (long) Math.floor(improveCompressionSize * (1 - IMPROVEMENT_THRESHOLD));
+        // Adjust for rounding so that the result matches the acceptance test exactly
+        while ((improveCompressionSize - size) / improveCompressionSize <= IMPROVEMENT_THRESHOLD) {
+            size--;
         }
-        //Add the size of the transactions in finalResult multiplied by their counts
-        for (Map.Entry<PatternKey, Integer> entry : patternCount.entrySet()) {
-            int patternSize = 0;
-            if (entry.getValue() != 0) {
-                int keySize = entry.getKey().pattern.length;
-                // Calculate the bit size for entry.getValue() using logarithm base 2
-                int valueBitSize = (int) Math.ceil(Math.log(entry.getValue() + 1) / Math.log(2));
-                patternSize = valueBitSize + keySize * Integer.SIZE;
-            }
-
-            totalSizeInBits += patternSize;
+        while ((improveCompressionSize - (size + 1)) / improveCompressionSize > IMPROVEMENT_THRESHOLD) {
+            size++;
         }
-
-        return totalSizeInBits;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, size));
     }
 
     /**
-     * Removes pattern elements from a transaction buffer
-     * @param transaction Transaction buffer (modified in-place)
-     * @param transactionLength Valid length of transaction data
-     * @param pattern Pattern to remove
-     * @return New transaction array with pattern elements removed
+     * Calculates an upper bound of the residual support of a pattern, which is the
+     * smallest residual frequency of its items
+     * @param pattern Candidate pattern
+     * @return The upper bound
      */
-    public static int[] removePatternFromTransaction(int[] transaction, int transactionLength, int[] pattern) {
-        Set<Integer> patternSet = new HashSet<>();
-        for (int num : pattern) {
-            patternSet.add(num);
-        }
-        int pos = 0;
-        for (int j = 0; j < transactionLength; j++) {
-            int item = transaction[j];
-            if (!patternSet.contains(item)) {
-                transaction[pos++] = item;
-            }
+    public static int supportUpperBound(int[] pattern) {
+        int bound = Integer.MAX_VALUE;
+        for (int item : pattern) {
+            bound = Math.min(bound, Math.max(itemFrequency.get(item), 0));
         }
-        return Arrays.copyOf(transaction, pos);
+        return bound;
     }
 
-
-
     /**
-     * Make a copy of this itemset but exclude a set of items
-     *
-     * @param itemsetToNotKeep the set of items to be excluded
-     * @return the copy
+     * Calculates the largest size that a neighbor can have to be accepted, either
+     * because it improves the compression or by the Metropolis criterion
+     * @param improveCompressionSize Size of the current pattern
+     * @param temperature Current temperature
+     * @param acceptanceThreshold Random number compared with the acceptance probability
+     * @return The largest accepted size in bits
      */
-    public static int[] cloneItemSetMinusAnItemset(int[] itemset, int[] itemsetToNotKeep) {
-        // create a new itemset
-        int[] newItemset = new int[itemset.length - itemsetToNotKeep.length];
-        int i = 0;
-        // for each item of this itemset
-        for (int j = 0; j < itemset.length; j++) {
-            // copy the item except if it is not an item that should be excluded
-            if (Arrays.binarySearch(itemsetToNotKeep, itemset[j]) < 0) {
-                newItemset[i++] = itemset[j];
-            }
+    public static int maxAcceptedSizeInBits(double improveCompressionSize, double temperature,
+            double acceptanceThreshold) {
+        int maxImprovingSize = maxAcceptedSizeInBits(improveCompressionSize);
+        double bound = Math.floor(improveCompressionSize - temperature * Math.log(acceptanceThreshold));
+        if (!(bound < Integer.MAX_VALUE - 1)) {
+            return Integer.MAX_VALUE;
         }
-        return newItemset; // return the copy
+        long size = (long) bound;
+        // Adjust for rounding so that the result matches the acceptance test exactly
+        while (size > Integer.MIN_VALUE
+                && !(Math.exp((improveCompressionSize - size) / temperature) > acceptanceThreshold)) {
+            size--;
+        }
+        while (Math.exp((improveCompressionSize - (size + 1)) / temperature) > acceptanceThreshold) {
+            size++;
+        }
+        return Math.max(maxImprovingSize, (int) size);
     }
 
     /**
-     * Removes a specified pattern from each transaction in the given database.
-     *
-     * This method returns a modified version of the database where each transaction
-     * that contains the given pattern has that pattern removed. The rest of the
-     * items remain unchanged. The method tracks how many times the pattern is
-     * removed but does not return that count.
-     *
-     * @param database the original database of transactions as a list of lists of
-     *                 integers
-     * @param pattern  the pattern (list of integers) to remove from each
-     *                 transaction if present
-     * @return a new database with the specified pattern removed from all
-     *         transactions in which it appears
+     * Removes pattern elements from a sorted transaction buffer
+     * @param transaction Transaction buffer (modified in-place)
+     * @param transactionLength Valid length of transaction data
+     * @param pattern Sorted pattern to remove
+     * @return New valid length of the transaction buffer
      */
-    public static List<int[]> deleteItemset(List<int[]> database, int[] pattern) {
-        List<int[]> modifiedDatabase = new ArrayList<>();
-//		int patCounter = 0;
-
-        for (int[] transaction : database) {
-
-            if (containsOrEquals(transaction, pattern)) {
-                transaction = cloneItemSetMinusAnItemset(transaction, pattern);
-//				patCounter++;
-                modifiedDatabase.add(transaction);
-            } else {
-                modifiedDatabase.add(transaction);
-            }
+    public static int removePatternFromTransaction(int[] transaction, int transactionLength, int[] pattern) {
+        return CoverKernel.removePattern(transaction, transactionLength, pattern);
+    }
 
-        }
 
-        return modifiedDatabase;
-    }
 
     /**
      * Reads itemsets (transactions) from a specified file and returns them as a
@@ -471,6 +486,84 @@ public class HMP_SA_Runner {
         return database;
     }
 
+    /**
+     * Loads the database of a text file into a CSR store, which keeps all the
+     * items in a single array. If the binary copy of the file is up to date, it is
+     * loaded without parsing. Otherwise, the text file is parsed as bytes, in
+     * parallel, by TransactionFileParser (empty lines and comment lines are
+     * skipped), and the binary copy is written for the next loads.
+     *
+     * An invalid item stops the loading, as done by readItemsetsFromFile, with an
+     * InvalidLineException that holds the transactions before the faulty line. The
+     * binary copy is then not written, so that the next loads report the error too.
+     *
+     * @param fileName the path to the file containing itemsets
+     * @return the store of the transactions, each one sorted
+     * @throws IOException if the file cannot be read, or if an item is invalid
+     */
+    public static CsrTransactionStore loadStoreFromFile(String fileName) throws IOException {
+        File textFile = new File(fileName);
+        CsrTransactionStore database = BinaryDatasetFile.readIfUpToDate(textFile);
+        if (database == null) {
+            long length = textFile.length();
+            long lastModified = textFile.lastModified();
+            database = TransactionFileParser.parse(fileName, PARSER_PARALLELISM);
+            try {
+                BinaryDatasetFile.write(database, textFile, length, lastModified);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Loads the database of a text file with its item frequencies and pair counts.
+     * The counts are read from the statistics file of the text file if it is up to
+     * date; otherwise they are calculated, and the statistics file is written for
+     * the next loads.
+     *
+     * If an item of the file is invalid, the error is printed and the transactions
+     * before the faulty line are used, but neither the binary copy nor the
+     * statistics file is written.
+     *
+     * @param fileName the path to the file containing itemsets
+     * @return the snapshot of the database
+     * @throws IOException if the file cannot be read, or a database kept on disk cannot be written
+     */
+    public static DatasetSnapshot loadSnapshot(String fileName) throws IOException {
+        File textFile = new File(fileName);
+        long length = textFile.length();
+        long lastModified = textFile.lastModified();
+        DatasetStatisticsFile statistics = STATISTICS_CACHE ? DatasetStatisticsFile.readIfUpToDate(textFile) : null;
+        TransactionStore database;
+        boolean complete = true;
+        try {
+            database = STREAMING_STORAGE
+                    ? StreamingTransactionStore.fromFile(fileName, PARSER_PARALLELISM, STREAMING_WINDOW_SIZE)
+                    : loadStoreFromFile(fileName);
+        } catch (TransactionFileParser.InvalidLineException e) {
+            e.printStackTrace();
+            database = e.getTransactions();
+            complete = false;
+            statistics = null;
+        }
+        DatasetSnapshot snapshot = STREAMING_STORAGE
+                ? new DatasetSnapshot((StreamingTransactionStore) database, OFF_HEAP_STORAGE,
+                        DENSE_PAIR_MATRIX_BUDGET, statistics)
+                : new DatasetSnapshot((CsrTransactionStore) database, BITMAP_DENSITY_THRESHOLD,
+                        COMPRESSED_ITEM_THRESHOLD, OFF_HEAP_STORAGE, DENSE_PAIR_MATRIX_BUDGET, statistics);
+        if (STATISTICS_CACHE && statistics == null && complete) {
+            try {
+                DatasetStatisticsFile.write(snapshot.copyItemFrequency(), snapshot.getPairMatrix(), textFile, length,
+                        lastModified);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return snapshot;
+    }
+
     static int[] SMALLBUFFER = new int[10];
 
     /**
@@ -645,174 +738,40 @@ public class HMP_SA_Runner {
     }
 
 
-    /**
-     * Checks whether a given pattern of items exists in at least one transaction
-     * within the provided database.
-     *
-     * <p>
-     * This method converts the given pattern and each transaction into sets, then
-     * verifies if any of the transaction sets contains all items of the pattern
-     * set. If at least one transaction fully contains the pattern, the method
-     * returns true.
-     *
-     * @param pattern  the pattern to check for, represented as a list of integers.
-     * @param database the database of transactions, where each transaction is a
-     *                 list of integers.
-     * @return {@code true} if the pattern is found in at least one transaction in
-     *         the database; {@code false} otherwise.
-     */
-    // Check if the pattern exists in the database
-    public static boolean isPatternInDatabase(int[] pattern, List<int[]> database) {
-        for (int[] transaction : database) {
-            if (containsOrEquals(transaction, pattern)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
     /**
      * Retrieves the index of the specified item from the global list of all items.
      *
      * <p>
-     * This method creates a list from the global collection of items and returns
-     * the zero-based index of the specified item. If the item is not present, the
-     * method returns -1.
+     * This method returns the zero-based index of the specified item in the sorted
+     * global collection of items, using the item dictionary. If the item is not
+     * present, the method returns -1.
      *
      * @param item the item whose index is to be determined.
      * @return the index of the item in the global list, or -1 if the item does not
      *         exist in the list.
      */
     public static int itemToIndex(int item) {
-        // Note: Could be optimized with HashMap for O(1) lookup if
-        // initialized once
-        // rather than doing a sequential search
-        for (int i = 0; i < allItems.length; i++) {
-            if (allItems[i] == item)
-                return i;
-        }
-        return -1;
+        // Constant time lookup in the dictionary, which orders the items as allItems
+        return itemDictionary.indexOf(item);
     }
 
     /**
-     * Check if an itemset contains another itemset. It assumes that itemsets are
-     * sorted according to the lexical order.
+     * Initializes the global variables from a snapshot of the database, as done by
+     * initializeDatabase for a list of transactions. The run gets its own copy of
+     * the item frequencies and cumulative weights, which it modifies, and shares
+     * the other values with the snapshot.
      *
-     * @param itemset1 the first itemset
-     * @param itemset2 the second itemset
-     * @return true if the first itemset contains the second itemset
+     * @param snapshot the snapshot of the database
      */
-    public static boolean containsOrEquals(int itemset1[], int itemset2[]) {
-        int i = 0, j = 0;
-
-        // Double pointer traversal, assuming itemset1 and itemset2 are already sorted
-        while (i < itemset1.length && j < itemset2.length) {
-            if (itemset1[i] == itemset2[j]) {
-                j++;  // If a matching element is found, continue matching the next element of itemset2
-            }
-            i++;  // Regardless, i must move forward
-        }
-
-        // If j reaches the end of itemset2, then itemset1 contains all the elements of itemset2.
-        return j == itemset2.length;
-    }
-    /**
-     * Initializes the database by processing each transaction and updating item
-     * frequencies, pair supports, the longest itemset size, and cumulative weights.
-     *
-     * The method performs the following actions: 1. Clears previously stored global
-     * variables, including item frequencies, codetable, etc. 2. Iterates over each
-     * transaction in the database: - Updates the frequency of each item. - Tracks
-     * the longest itemset size. - Updates the support of all 2-item patterns in the
-     * matrix. 3. Calculates the cumulative weight of items and updates the
-     * `cumulativeWeights` list.
-     *
-     * @param database the list of transactions, where each transaction is
-     *                 represented as a list of integers.
-     */
-    public static void initializeDatabase(List<int[]> database) {
-        longestItemSet = 0;
-        totalWeight = 0;
-        itemFrequency = new AMapIntToInt();
-        cumulativeWeights  = new ArrayList<Map.Entry<Integer, Integer>>();
-        matrix  = new SparseTriangularMatrix();
-
-        // Iterate through the database and update item frequencies and pair supports
-        for (int[] transaction : database) {
-
-            // Update item frequency and the support of each item pair
-            for (int i = 0; i < transaction.length; i++) {
-                Integer item = transaction[i];
-
-                // Update frequency for item1
-                int frequency = itemFrequency.get(item);
-                if (frequency == -1) {
-                    itemFrequency.put(item, 1);
-                } else {
-                    itemFrequency.put(item, frequency + 1);
-                }
-            }
-
-            // Track the longest itemset size
-            if (transaction.length > longestItemSet) {
-                longestItemSet = transaction.length;
-            }
-
-            // Generate and update all 2-item patterns in the matrix
-            for (int i = 0; i < transaction.length; i++) {
-                Integer item1 = transaction[i];
-
-                // Iterate over the remaining items in the transaction to form 2-item patterns
-                for (int j = i + 1; j < transaction.length; j++) {
-                    Integer item2 = transaction[j];
-
-                    // Increment the support count for this item pair in the matrix
-                    matrix.incrementCount(item1, item2);
-                }
-            }
-        }
-
-        // Initialize list of all items here
-        allItems = new int[itemFrequency.size()];
-        int index = 0;
-        // Now calculate the cumulative weight and populate the cumulativeWeights list
-        MapIntToInt.EntryIterator iter = itemFrequency.iterator();
-        while (iter.hasNext()) {
-            MapIntToInt.MapEntryIntToInt entry = iter.next();
-            allItems[index++] = entry.getKey();
-            totalWeight += entry.getValue();
-            cumulativeWeights.add(new AbstractMap.SimpleEntry<>(entry.getKey(), totalWeight));
-        }
-        Arrays.sort(allItems);
-    }
-
-    /**
-     * Counts the occurrences of a specific pattern in the provided database of
-     * transactions.
-     *
-     * This method checks each transaction to see if it contains all items in the
-     * given pattern. If so, the transaction is considered a match and is counted.
-     *
-     * @param pattern  the pattern to search for in the database (a list of
-     *                 integers).
-     * @param database the list of transactions to search through.
-     * @return the number of transactions that contain all items in the specified
-     *         pattern.
-     */
-
-    public static int countOccurrencesInDatabase(int[] pattern, List<int[]> database) {
-        if (pattern.length == 0) {
-            return 0;
-        }
-
-        int count = 0;
-        for (int[] transaction : database) {
-            if (containsOrEquals(transaction,pattern)) {
-                count++;
-            }
-        }
-        return count;
+    public static void initializeDatabase(DatasetSnapshot snapshot) {
+        longestItemSet = snapshot.getLongestItemSet();
+        totalWeight = snapshot.getTotalWeight();
+        itemFrequency = snapshot.copyItemFrequency();
+        cumulativeWeights = snapshot.copyCumulativeWeights();
+        matrix = snapshot.getPairMatrix();
+        matrixShared = true;
+        allItems = snapshot.getAllItems();
+        itemDictionary = snapshot.getItemDictionary();
     }
 
     /**
@@ -855,52 +814,21 @@ public class HMP_SA_Runner {
         return j == pattern.length;
     }
 
-    /**
-     * Creates a deep copy of the provided database.
-     *
-     * This method duplicates the database such that modifications to the copied
-     * database do not affect the original one. Each transaction (which is a list of
-     * integers) is copied individually.
-     *
-     * @param database the original database of transactions.
-     * @return a new database that is a deep copy of the original.
-     */
-    public static List<int[]> copyDatabase(List<int[]> database) {
-        List<int[]> copy = new ArrayList<>(database.size());
-
-        for (int[] transaction : database) {
-            copy.add(Arrays.copyOf(transaction, transaction.length));
-        }
-
-        return copy;
-    }
-
-
     /**
      * Updates the matrix of item pair supports by recalculating the supports based
-     * on the current database.
+     * on a residual database.
      *
-     * This method clears the matrix and then iterates through the database,
-     * updating the support count for all 2-item patterns in each transaction.
-     *
-     * @param database the list of transactions to process.
+     * @param database the residual database.
      */
-    public static void updateMatrix(List<int[]> database) {
-        matrix.clear();
-        for (int[] transaction : database) {
-            // Generate and update all 2-item patterns in the matrix
-            for (int i = 0; i < transaction.length; i++) {
-                Integer item1 = transaction[i];
-
-                // Iterate over the remaining items in the transaction to form 2-item patterns
-                for (int j = i + 1; j < transaction.length; j++) {
-                    Integer item2 = transaction[j];
-
-                    // Increment the support count for this item pair in the matrix
-                    matrix.incrementCount(item1, item2);
-                }
-            }
+    public static void updateMatrix(TransactionStore database) {
+        // The matrix of the snapshot is replaced by an empty copy instead of being cleared
+        if (matrixShared) {
+            matrix = matrix.emptyCopy();
+            matrixShared = false;
+        } else {
+            matrix.clear();
         }
+        database.countPairs(matrix);
     }
 
 }
@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * IndexedTransactionStore stores the distinct transactions in a
+ * CsrTransactionStore, with an inverted index giving the transactions of each
+ * item. It is used for sparse databases, where a transaction contains a small
+ * fraction of the items: a pattern is searched only in the transactions of its
+ * rarest item, and exists() only intersects the lists of the items of the
+ * pattern, without reading the transactions.
+ *
+ * The transactions are copied by the constructor, so that removeItemset() does
+ * not modify the source database. Removing a pattern only visits the
+ * transactions of its rarest item, and compacts each modified transaction in
+ * place. The lists of the index that lost transactions are compacted once, after
+ * all the transactions are modified.
+ *
+ * To keep the index valid, transaction ids never change: a transaction merged
+ * into an identical one is replaced by an empty transaction of weight 0.
+ */
+public class IndexedTransactionStore implements TransactionStore {
+
+    /** The distinct transactions */
+    private final CsrTransactionStore transactions;
+    /** The id of each distinct transaction, by content */
+    private final Map<Row, Integer> positions = new HashMap<>();
+    /** The transactions of each item */
+    private final InvertedIndex index;
+
+    /**
+     * Constructor
+     * @param database a list of sorted transactions
+     */
+    public IndexedTransactionStore(List<int[]> database) {
+        this(new CsrTransactionStore(database));
+    }
+
+    /**
+     * Constructor
+     * @param database the source store (it is not modified)
+     */
+    public IndexedTransactionStore(TransactionStore database) {
+        List<int[]> distinctTransactions = new ArrayList<>();
+        int[] weights = TransactionStores.collapse(database, distinctTransactions);
+        CsrTransactionStore.Builder builder = new CsrTransactionStore.Builder(distinctTransactions.size(), 64);
+        for (int tid = 0; tid < distinctTransactions.size(); tid++) {
+            int[] transaction = distinctTransactions.get(tid);
+            builder.add(transaction, 0, transaction.length, weights[tid]);
+        }
+        transactions = builder.build();
+        for (int tid = 0; tid < transactions.size(); tid++) {
+            positions.put(new Row(tid), tid);
+        }
+        index = new InvertedIndex(transactions, TransactionStores.distinctItems(transactions));
+    }
+
+    /**
+     * Copy constructor. The keys of the transactions are copied with their hash
+     * code, so the items are not hashed again.
+     * @param source the store to copy
+     */
+    private IndexedTransactionStore(IndexedTransactionStore source) {
+        transactions = source.transactions.copy();
+        index = source.index.copy();
+        for (Row key : source.positions.keySet()) {
+            positions.put(new Row(key.tid, key.hash), key.tid);
+        }
+    }
+
+    @Override
+    public IndexedTransactionStore copy() {
+        return new IndexedTransactionStore(this);
+    }
+
+    @Override
+    public int size() {
+        return transactions.size();
+    }
+
+    @Override
+    public int getWeight(int tid) {
+        return transactions.getWeight(tid);
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return transactions.getTransactionCount();
+    }
+
+    @Override
+    public int getLength(int tid) {
+        return transactions.getLength(tid);
+    }
+
+    @Override
+    public int getMaxLength() {
+        return transactions.getMaxLength();
+    }
+
+    @Override
+    public int getItems(int tid, int[] buffer) {
+        return transactions.getItems(tid, buffer);
+    }
+
+    @Override
+    public boolean contains(int tid, int[] pattern) {
+        return transactions.contains(tid, pattern);
+    }
+
+    @Override
+    public int support(int[] pattern) {
+        return support(pattern, 0);
+    }
+
+    @Override
+    public int support(int[] pattern, int minSupport) {
+        if (pattern.length == 0) {
+            return transactions.support(pattern, minSupport);
+        }
+        int rarest = index.rarestItem(pattern);
+        if (rarest < 0) {
+            return 0;
+        }
+        // only the transactions of the rarest item can contain the pattern
+        long signature = CoverKernel.signature(pattern);
+        int[] tids = index.getTids(rarest);
+        int remaining = index.getFrequency(rarest);
+        int count = 0;
+        for (int i = 0; i < index.getLength(rarest); i++) {
+            int tid = tids[i];
+            int weight = transactions.getWeight(tid);
+            if (transactions.contains(tid, pattern, signature)) {
+                count += weight;
+            }
+            remaining -= weight;
+            if (count + remaining < minSupport) {
+                return count + remaining;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the transactions that contain each pattern of a list. Each pattern is
+     * counted on its own, from the transactions of its rarest item, which is
+     * faster than one pass over all the transactions with a PatternTrie.
+     * @param patterns the patterns (an empty pattern has a support of 0)
+     * @return the support of each pattern, in the order of the list
+     */
+    @Override
+    public int[] supports(List<int[]> patterns) {
+        int[] result = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            result[p] = patterns.get(p).length == 0 ? 0 : support(patterns.get(p));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean exists(int[] pattern) {
+        if (pattern.length == 0) {
+            return transactions.exists(pattern);
+        }
+        if (isStrictlyAscending(pattern)) {
+            // merged transactions are removed from the index, so a common id is a transaction of weight > 0
+            return index.hasCommonTid(pattern);
+        }
+        // a pattern that is not a sorted set is matched item by item, as by contains()
+        int rarest = index.rarestItem(pattern);
+        if (rarest < 0) {
+            return false;
+        }
+        long signature = CoverKernel.signature(pattern);
+        int[] tids = index.getTids(rarest);
+        for (int i = 0; i < index.getLength(rarest); i++) {
+            if (transactions.contains(tids[i], pattern, signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the items of a pattern are sorted and distinct
+     * @param pattern the pattern
+     * @return true if each item is larger than the previous one
+     */
+    private static boolean isStrictlyAscending(int[] pattern) {
+        for (int i = 1; i < pattern.length; i++) {
+            if (pattern[i - 1] >= pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int removeItemset(int[] pattern) {
+        if (pattern.length == 0) {
+            return 0;
+        }
+        int rarest = index.rarestItem(pattern);
+        if (rarest < 0) {
+            return 0;
+        }
+        // copy the candidate transactions, since the lists change during the removal
+        int[] candidates = Arrays.copyOf(index.getTids(rarest), index.getLength(rarest));
+        long signature = CoverKernel.signature(pattern);
+        int modified = 0;
+        for (int tid : candidates) {
+            if (transactions.getWeight(tid) > 0 && transactions.contains(tid, pattern, signature)) {
+                // the key depends on the items, so it is removed before they change
+                positions.remove(new Row(tid));
+                transactions.removeItemset(tid, pattern);
+                for (int item : pattern) {
+                    int itemIndex = index.indexOf(item);
+                    index.removeTid(itemIndex, tid);
+                    index.addFrequency(itemIndex, -transactions.getWeight(tid));
+                }
+                mergeIdenticalTransaction(tid);
+                modified++;
+            }
+        }
+        // the lists are not read during the removal, so each one is compacted once
+        index.compact();
+        return modified;
+    }
+
+    /**
+     * Merge a modified transaction with the identical transaction, if there is one.
+     * The transaction that comes last is merged into the first one, and is replaced
+     * by an empty transaction of weight 0, so that the other transaction ids do not
+     * change.
+     * @param tid the id of the modified transaction
+     */
+    private void mergeIdenticalTransaction(int tid) {
+        Row key = new Row(tid);
+        Integer other = positions.get(key);
+        if (other == null) {
+            positions.put(key, tid);
+        } else if (other < tid) {
+            clearTransaction(tid);
+            transactions.mergeInto(tid, other);
+        } else {
+            positions.remove(key);
+            clearTransaction(other);
+            transactions.mergeInto(other, tid);
+            positions.put(new Row(tid), tid);
+        }
+    }
+
+    /**
+     * Remove a transaction that is about to be merged from the index
+     * @param tid the transaction id
+     */
+    private void clearTransaction(int tid) {
+        int[] buffer = new int[transactions.getLength(tid)];
+        int length = transactions.getItems(tid, buffer);
+        for (int i = 0; i < length; i++) {
+            index.removeTid(index.indexOf(buffer[i]), tid);
+        }
+    }
+
+    @Override
+    public int getSizeInBits() {
+        return transactions.getSizeInBits();
+    }
+
+    @Override
+    public void countItems(MapIntToInt itemFrequency) {
+        transactions.countItems(itemFrequency);
+    }
+
+    @Override
+    public void countPairs(AbstractTriangularMatrix matrix) {
+        transactions.countPairs(matrix);
+    }
+
+    /** A key comparing the items of a transaction */
+    private final class Row {
+        /** The transaction id */
+        private final int tid;
+        /** The hash code of the items when the key was created */
+        private final int hash;
+
+        Row(int tid) {
+            this(tid, transactions.hashItems(tid));
+        }
+
+        Row(int tid, int hash) {
+            this.tid = tid;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Row && transactions.sameItems(tid, ((Row) o).tid);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.Arrays;
+
+/**
+ * InvertedIndex maps each item of a transaction store to the sorted list of the
+ * ids of the transactions that contain it, and to its frequency (the sum of the
+ * weights of these transactions). A pattern can then be counted by scanning only
+ * the transactions of its rarest item, instead of the whole database, and its
+ * existence is checked by intersecting the lists of its items.
+ *
+ * The index does not observe the store: the store must call removeTid() and
+ * addFrequency() each time it removes an item from a transaction or changes a
+ * weight. The removed transaction ids are only recorded, and the store must call
+ * compact() before the lists are read again: each list that lost transactions is
+ * then compacted once, so removing many transactions from a list is not quadratic.
+ */
+public class InvertedIndex {
+
+    /** The indexed items, in ascending order */
+    private final int[] items;
+    /** The transaction ids of each item, sorted */
+    private final int[][] tids;
+    /** Number of transaction ids of each item */
+    private final int[] lengths;
+    /** Frequency of each item */
+    private final int[] frequencies;
+    /** The transaction ids removed from each item since the last compact(), or null */
+    private final int[][] removed;
+    /** Number of removed transaction ids of each item */
+    private final int[] removedCounts;
+    /** The indexes of the items with removed transaction ids */
+    private int[] pending = new int[16];
+    /** Number of items with removed transaction ids */
+    private int pendingCount = 0;
+
+    /**
+     * Constructor
+     * @param database the transaction store to index
+     * @param items the distinct items of the store, in ascending order
+     */
+    public InvertedIndex(TransactionStore database, int[] items) {
+        this.items = items;
+        this.tids = new int[items.length][];
+        this.lengths = new int[items.length];
+        this.frequencies = new int[items.length];
+        this.removed = new int[items.length][];
+        this.removedCounts = new int[items.length];
+        int[] buffer = new int[database.getMaxLength()];
+        // count the transactions of each item, then fill the lists in transaction order
+        for (int tid = 0; tid < database.size(); tid++) {
+            int length = database.getItems(tid, buffer);
+            for (int i = 0; i < length; i++) {
+                lengths[indexOf(buffer[i])]++;
+            }
+        }
+        for (int index = 0; index < items.length; index++) {
+            tids[index] = new int[lengths[index]];
+            lengths[index] = 0;
+        }
+        for (int tid = 0; tid < database.size(); tid++) {
+            int length = database.getItems(tid, buffer);
+            for (int i = 0; i < length; i++) {
+                int index = indexOf(buffer[i]);
+                tids[index][lengths[index]++] = tid;
+                frequencies[index] += database.getWeight(tid);
+            }
+        }
+    }
+
+    /**
+     * Copy constructor
+     * @param source the index to copy, without pending removals
+     */
+    private InvertedIndex(InvertedIndex source) {
+        this.items = source.items;
+        this.tids = new int[source.tids.length][];
+        for (int index = 0; index < tids.length; index++) {
+            tids[index] = Arrays.copyOf(source.tids[index], source.lengths[index]);
+        }
+        this.lengths = source.lengths.clone();
+        this.frequencies = source.frequencies.clone();
+        this.removed = new int[items.length][];
+        this.removedCounts = new int[items.length];
+    }
+
+    /**
+     * Create an independent copy of the index, for a copy of the indexed store
+     * @return the copy
+     */
+    public InvertedIndex copy() {
+        return new InvertedIndex(this);
+    }
+
+    /**
+     * Get the index of an item
+     * @param item the item
+     * @return the index, or a negative value if the item is not indexed
+     */
+    public int indexOf(int item) {
+        return Arrays.binarySearch(items, item);
+    }
+
+    /**
+     * Get the index of the item of a pattern that appears in the fewest transactions
+     * @param pattern a non-empty pattern
+     * @return the index of the rarest item, or -1 if an item of the pattern is not indexed
+     */
+    public int rarestItem(int[] pattern) {
+        int rarest = -1;
+        for (int item : pattern) {
+            int index = indexOf(item);
+            if (index < 0) {
+                return -1;
+            }
+            if (rarest == -1 || lengths[index] < lengths[rarest]) {
+                rarest = index;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * Check if the lists of the items of a pattern have a transaction id in common.
+     * The lists are intersected from the shortest one by leapfrogging: each list in
+     * turn jumps, with a galloping search, to the first id that is not smaller than
+     * the largest id seen so far, and the search stops at the first id found in all
+     * the lists. The transactions themselves are not read.
+     * @param pattern a non-empty pattern
+     * @return true if a transaction contains all the items of the pattern
+     */
+    public boolean hasCommonTid(int[] pattern) {
+        int[] indexes = new int[pattern.length];
+        for (int i = 0; i < pattern.length; i++) {
+            int index = indexOf(pattern[i]);
+            if (index < 0 || lengths[index] == 0) {
+                return false;
+            }
+            // insertion sort by the number of transactions, the patterns are short
+            int j = i;
+            while (j > 0 && lengths[indexes[j - 1]] > lengths[index]) {
+                indexes[j] = indexes[j - 1];
+                j--;
+            }
+            indexes[j] = index;
+        }
+        if (indexes.length == 1) {
+            return true;
+        }
+
+        int[] positions = new int[indexes.length];
+        int target = tids[indexes[0]][0];
+        int agreeing = 1;
+        int list = 1;
+        while (true) {
+            int index = indexes[list];
+            int position = seek(tids[index], positions[list], lengths[index], target);
+            if (position == lengths[index]) {
+                return false;
+            }
+            positions[list] = position;
+            int tid = tids[index][position];
+            if (tid == target) {
+                if (++agreeing == indexes.length) {
+                    return true;
+                }
+            } else {
+                target = tid;
+                agreeing = 1;
+            }
+            list = list + 1 == indexes.length ? 0 : list + 1;
+        }
+    }
+
+    /**
+     * Find the first value of a sorted list that is not smaller than a target, by
+     * doubling the step from the start position and then searching the last step
+     * by bisection
+     * @param list the sorted list
+     * @param from the position where the search starts
+     * @param end the position after the last valid value
+     * @param target the target
+     * @return the position of the first value at least equal to the target, or end if there is none
+     */
+    private static int seek(int[] list, int from, int end, int target) {
+        int step = 1;
+        int high = from;
+        while (high < end && list[high] < target) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int position = Arrays.binarySearch(list, from, Math.min(high + 1, end), target);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Get the transaction ids of an item. Only the first getLength(index) values are valid.
+     * @param index the index of the item
+     * @return the sorted transaction ids
+     */
+    public int[] getTids(int index) {
+        return tids[index];
+    }
+
+    /**
+     * Get the number of transactions that contain an item
+     * @param index the index of the item
+     * @return the number of transaction ids
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Get the frequency of an item
+     * @param index the index of the item
+     * @return the sum of the weights of the transactions that contain the item
+     */
+    public int getFrequency(int index) {
+        return frequencies[index];
+    }
+
+    /**
+     * Record that a transaction id must be removed from the list of an item. The
+     * list is only changed by the next call to compact().
+     * @param index the index of the item
+     * @param tid the transaction id
+     */
+    public void removeTid(int index, int tid) {
+        int count = removedCounts[index];
+        if (count == 0) {
+            if (removed[index] == null) {
+                removed[index] = new int[4];
+            }
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+            }
+            pending[pendingCount++] = index;
+        } else if (count == removed[index].length) {
+            removed[index] = Arrays.copyOf(removed[index], count * 2);
+        }
+        removed[index][count] = tid;
+        removedCounts[index] = count + 1;
+    }
+
+    /**
+     * Remove the recorded transaction ids from the lists. Each list is compacted in
+     * one pass, merged with its sorted removed ids.
+     */
+    public void compact() {
+        for (int p = 0; p < pendingCount; p++) {
+            int index = pending[p];
+            int[] list = tids[index];
+            int[] removedTids = removed[index];
+            int count = removedCounts[index];
+            Arrays.sort(removedTids, 0, count);
+            int r = 0;
+            int kept = 0;
+            for (int position = 0; position < lengths[index]; position++) {
+                int tid = list[position];
+                while (r < count && removedTids[r] < tid) {
+                    r++;
+                }
+                if (r == count || removedTids[r] != tid) {
+                    list[kept++] = tid;
+                }
+            }
+            lengths[index] = kept;
+            removedCounts[index] = 0;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Add a value to the frequency of an item
+     * @param index the index of the item
+     * @param delta the value to add (negative when a transaction loses the item)
+     */
+    public void addFrequency(int index, int delta) {
+        frequencies[index] += delta;
+    }
+}
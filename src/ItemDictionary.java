@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * ItemDictionary numbers the n distinct items of a database from 0 to n - 1, in
+ * the ascending order of the items (indexOf). This is the index used by
+ * itemToIndex in the HMP runners, and by DenseTriangularMatrix.
+ *
+ * When the items lie in a range that is not much larger than the number of
+ * items, the lookups are done in an array indexed by item, in constant time.
+ * Otherwise, they use a binary search.
+ */
+public class ItemDictionary {
+
+    /** Maximum ratio between the range of the items and their number for the lookup table */
+    private static final int MAX_SPARSITY = 8;
+
+    /** The items in ascending order */
+    private final int[] items;
+    /** The frequency of each item, in ascending order of the items */
+    private final int[] frequencies;
+    /** Smallest item, the origin of the lookup table */
+    private final int minItem;
+    /** Index of each item - minItem in ascending order (-1 if absent), or null to use a binary search */
+    private final int[] lookup;
+
+    /**
+     * Constructor
+     * @param itemFrequency the frequency of each item
+     */
+    public ItemDictionary(MapIntToInt itemFrequency) {
+        int size = itemFrequency.size();
+        long[] entries = new long[size];
+        MapIntToInt.EntryIterator iter = itemFrequency.iterator();
+        int position = 0;
+        while (iter.hasNext()) {
+            MapIntToInt.MapEntryIntToInt entry = iter.next();
+            // sort by item: the item is in the high bits, shifted to be unsigned
+            entries[position++] = ((long) (entry.getKey() ^ Integer.MIN_VALUE) << 32) | (entry.getValue() & 0xFFFFFFFFL);
+        }
+        Arrays.sort(entries);
+        items = new int[size];
+        frequencies = new int[size];
+        for (int i = 0; i < size; i++) {
+            items[i] = (int) (entries[i] >>> 32) ^ Integer.MIN_VALUE;
+            frequencies[i] = (int) entries[i];
+        }
+
+        minItem = size == 0 ? 0 : items[0];
+        long range = size == 0 ? 0 : (long) items[size - 1] - items[0] + 1;
+        if (size > 0 && range <= (long) size * MAX_SPARSITY + 1024) {
+            lookup = new int[(int) range];
+            Arrays.fill(lookup, -1);
+            for (int i = 0; i < size; i++) {
+                lookup[items[i] - minItem] = i;
+            }
+        } else {
+            lookup = null;
+        }
+    }
+
+    /**
+     * Get the number of items
+     * @return the number of distinct items
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Get the index of an item in the ascending order of the items
+     * @param item the item
+     * @return the index, or -1 if the item is not in the dictionary
+     */
+    public int indexOf(int item) {
+        if (lookup != null) {
+            long offset = (long) item - minItem;
+            return offset < 0 || offset >= lookup.length ? -1 : lookup[(int) offset];
+        }
+        int index = Arrays.binarySearch(items, item);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Get the item at an index of the ascending order
+     * @param index the index
+     * @return the item
+     */
+    public int getItem(int index) {
+        return items[index];
+    }
+
+    /**
+     * Get the frequency of an item
+     * @param index the index of the item in the ascending order
+     * @return the frequency
+     */
+    public int getFrequency(int index) {
+        return frequencies[index];
+    }
+}
@@ -0,0 +1,159 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class is a benchmark of the CoverKernel. It compares the time and the
+ * number of bytes allocated per evaluation by the kernel with the previous
+ * implementation of deleteAndCalculateSizeInBits, which allocated a PatternKey,
+ * a boxed Integer and a HashSet for each covered transaction. The parallel
+ * kernel is also measured, and checked to give the same size.
+ *
+ * Usage: java MainBenchmarkCoverKernel [dataset] [code table size] [evaluations]
+ *
+ * @see CoverKernel
+ * @see ParallelCoverKernel
+ */
+public class MainBenchmarkCoverKernel {
+
+    public static void main(String[] args) {
+        String filePath = args.length > 0 ? args[0] : "Datasets/chess.txt";
+        int codeTableSize = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int evaluations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        List<int[]> database = HMP_SA_Runner.readItemsetsFromFile(filePath);
+        List<int[]> codeTable = createCodeTable(database, codeTableSize);
+        System.out.println("Dataset: " + filePath + ", transactions: " + database.size()
+                + ", code table size: " + codeTable.size());
+
+        CoverKernel kernel = new CoverKernel();
+        // Warm up both implementations, this also grows the buffers of the kernel
+        int expected = 0;
+        int result = 0;
+        for (int i = 0; i < evaluations; i++) {
+            expected = legacyCoverSizeInBits(database, codeTable);
+            result = kernel.coverSizeInBits(database, codeTable);
+        }
+        if (expected != result) {
+            throw new IllegalStateException("Different sizes: " + expected + " and " + result);
+        }
+        System.out.println("Compressed size: " + result);
+
+        measure("Legacy (PatternKey/HashMap/HashSet)", evaluations, () -> legacyCoverSizeInBits(database, codeTable));
+        measure("CoverKernel", evaluations, () -> kernel.coverSizeInBits(database, codeTable));
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ParallelCoverKernel parallelKernel = new ParallelCoverKernel(parallelism, 0);
+        int parallelResult = parallelKernel.coverSizeInBits(database, codeTable);
+        if (parallelResult != expected) {
+            throw new IllegalStateException("Different sizes: " + expected + " and " + parallelResult);
+        }
+        measure("ParallelCoverKernel (" + parallelism + " threads)", evaluations,
+                () -> parallelKernel.coverSizeInBits(database, codeTable));
+    }
+
+    /** An evaluation to measure */
+    private interface Evaluation {
+        int run();
+    }
+
+    /**
+     * Run an evaluation several times and print the time and bytes allocated per evaluation
+     * @param name the name of the evaluation
+     * @param evaluations the number of evaluations
+     * @param evaluation the evaluation
+     */
+    private static void measure(String name, int evaluations, Evaluation evaluation) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long checksum = 0;
+        long startBytes = bean.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            checksum += evaluation.run();
+        }
+        long elapsedTime = System.nanoTime() - startTime;
+        long allocatedBytes = bean.getThreadAllocatedBytes(threadId) - startBytes;
+        System.out.println(name + ": " + (elapsedTime / evaluations / 1000) + " us/evaluation, "
+                + (allocatedBytes / evaluations) + " bytes allocated/evaluation (checksum " + checksum + ")");
+    }
+
+    /**
+     * Create a code table of random patterns of 2 to 4 items taken from the transactions.
+     * A fixed seed is used so that runs can be compared.
+     * @param database the database
+     * @param codeTableSize the desired number of patterns
+     * @return the code table
+     */
+    private static List<int[]> createCodeTable(List<int[]> database, int codeTableSize) {
+        Random random = new Random(42);
+        List<int[]> codeTable = new ArrayList<>();
+        Set<IntArrayWrapper> seen = new HashSet<>();
+        for (int tries = 0; tries < codeTableSize * 100 && codeTable.size() < codeTableSize; tries++) {
+            int[] transaction = database.get(random.nextInt(database.size()));
+            int length = 2 + random.nextInt(3);
+            if (transaction.length >= length) {
+                // choose distinct positions in the transaction
+                int[] pattern = new int[length];
+                int[] positions = random.ints(0, transaction.length).distinct().limit(length).toArray();
+                for (int i = 0; i < length; i++) {
+                    pattern[i] = transaction[positions[i]];
+                }
+                Arrays.sort(pattern);
+                if (seen.add(new IntArrayWrapper(pattern))) {
+                    codeTable.add(pattern);
+                }
+            }
+        }
+        return codeTable;
+    }
+
+    /**
+     * The previous implementation of deleteAndCalculateSizeInBits, kept for comparison
+     * @param database the database
+     * @param codeTable the code table
+     * @return the compressed size
+     */
+    private static int legacyCoverSizeInBits(List<int[]> database, List<int[]> codeTable) {
+        int[] buffer = new int[500];
+        Map<PatternKey, Integer> patternCount = new HashMap<>();
+        int totalSizeInBits = 0;
+        for (int[] transaction : database) {
+            if (buffer.length < transaction.length) {
+                buffer = new int[Math.max(transaction.length * 2, buffer.length)];
+            }
+            System.arraycopy(transaction, 0, buffer, 0, transaction.length);
+            int newLength = transaction.length;
+            for (int[] pattern : codeTable) {
+                if (newLength >= pattern.length && HMP_SA_Runner.containsAll(buffer, newLength, pattern)) {
+                    PatternKey key = new PatternKey(pattern);
+                    patternCount.put(key, patternCount.getOrDefault(key, 0) + 1);
+                    Set<Integer> patternSet = new HashSet<>();
+                    for (int num : pattern) {
+                        patternSet.add(num);
+                    }
+                    int pos = 0;
+                    for (int j = 0; j < newLength; j++) {
+                        if (!patternSet.contains(buffer[j])) {
+                            buffer[pos++] = buffer[j];
+                        }
+                    }
+                    Arrays.copyOf(buffer, pos);
+                    newLength = newLength - pattern.length;
+                }
+            }
+            totalSizeInBits += newLength * Integer.SIZE;
+        }
+        for (Map.Entry<PatternKey, Integer> entry : patternCount.entrySet()) {
+            int valueBitSize = (int) Math.ceil(Math.log(entry.getValue() + 1) / Math.log(2));
+            totalSizeInBits += valueBitSize + entry.getKey().pattern.length * Integer.SIZE;
+        }
+        return totalSizeInBits;
+    }
+}
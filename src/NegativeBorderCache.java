@@ -0,0 +1,267 @@
+import java.util.Arrays;
+
+/**
+ * NegativeBorderCache remembers itemsets that are absent from a database, so that
+ * the supersets of an absent itemset are rejected without scanning the database.
+ *
+ * The database must never gain items: it is the weighted database, which is only
+ * read, or a residual database, from which patterns are only removed. An itemset
+ * absent from it then stays absent, and so do all its supersets. Each run has its
+ * own cache, since the residual database is not shared.
+ *
+ * The absent itemsets are kept in a set-trie: each node is an item, and an itemset
+ * ends at the node of its last item. A pattern is known to be absent if one of
+ * the itemsets is a subset of it, which is found by a walk that only follows the
+ * children whose item is in the pattern. An itemset is only recorded if no
+ * recorded itemset is a subset of it. When a pair matrix of the database is
+ * given, an absent pattern is first reduced to a pair of its items that no
+ * transaction contains, which rejects many more supersets.
+ *
+ * Only patterns whose items are strictly ascending are cached; the other
+ * patterns are always checked against the database. The cache is bounded: once
+ * it holds maxSize itemsets, new absent itemsets are no longer recorded.
+ */
+public class NegativeBorderCache {
+
+    /** A node searches the items of the pattern among its children when it has this many times more children */
+    private static final int SEARCH_RATIO = 4;
+
+    /** The database */
+    private final TransactionStore database;
+    /** The count of each pair of items of the database, or null */
+    private final PairCountMatrix pairMatrix;
+    /** The maximum number of itemsets */
+    private final int maxSize;
+
+    /** The items of the children of each node, in ascending order */
+    private int[][] childItems = new int[16][];
+    /** The children of each node, in the order of their items */
+    private int[][] children = new int[16][];
+    /** Number of children of each node */
+    private int[] childCounts = new int[16];
+    /** True if an absent itemset ends at the node */
+    private boolean[] ends = new boolean[16];
+    /** Number of nodes (the root is node 0) */
+    private int nodeCount = 0;
+    /** Number of absent itemsets */
+    private int size = 0;
+    /** Number of patterns rejected without scanning the database */
+    private long hits = 0;
+    /** Number of patterns checked against the database */
+    private long misses = 0;
+
+    /**
+     * Constructor
+     * @param database the database, which must never gain items
+     * @param pairMatrix the count of each pair of items of the database, or null
+     * @param maxSize the maximum number of itemsets kept in the cache
+     */
+    public NegativeBorderCache(TransactionStore database, PairCountMatrix pairMatrix, int maxSize) {
+        this.database = database;
+        this.pairMatrix = pairMatrix;
+        this.maxSize = maxSize;
+        newNode();
+    }
+
+    /**
+     * Check if at least one transaction of the database contains a sorted pattern.
+     * The database is only scanned if no known absent itemset is a subset of the
+     * pattern, and the pattern is recorded if it is absent.
+     * @param pattern the pattern
+     * @return true if the pattern appears in the database
+     */
+    public boolean exists(int[] pattern) {
+        if (isKnownAbsent(pattern)) {
+            return false;
+        }
+        if (database.exists(pattern)) {
+            return true;
+        }
+        addAbsent(pattern);
+        return false;
+    }
+
+    /**
+     * Check if a recorded absent itemset is a subset of a sorted pattern
+     * @param pattern the pattern
+     * @return true if the pattern is known to be absent from the database
+     */
+    public boolean isKnownAbsent(int[] pattern) {
+        if (size > 0 && isStrictlyAscending(pattern) && containsSubsetOf(0, pattern, 0)) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * Record a sorted pattern that is absent from the database
+     * @param pattern the pattern
+     */
+    public void addAbsent(int[] pattern) {
+        if (size >= maxSize || pattern.length == 0 || !isStrictlyAscending(pattern)) {
+            return;
+        }
+        int[] itemset = absentPairOf(pattern);
+        if (itemset == null) {
+            itemset = pattern;
+        }
+        if (!containsSubsetOf(0, itemset, 0)) {
+            insert(itemset);
+        }
+    }
+
+    /**
+     * Find a pair of items of a pattern that no transaction contains
+     * @param pattern an absent pattern
+     * @return the pair, or null if there is no pair matrix or every pair appears
+     */
+    private int[] absentPairOf(int[] pattern) {
+        if (pairMatrix == null) {
+            return null;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            for (int j = i + 1; j < pattern.length; j++) {
+                if (pairMatrix.getSupportForItems(pattern[i], pattern[j]) == 0) {
+                    return new int[] { pattern[i], pattern[j] };
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the items of a pattern are sorted and distinct
+     * @param pattern the pattern
+     * @return true if each item is larger than the previous one
+     */
+    private static boolean isStrictlyAscending(int[] pattern) {
+        for (int i = 1; i < pattern.length; i++) {
+            if (pattern[i - 1] >= pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if an itemset below a node is a subset of the remaining items of a pattern
+     * @param node a node whose items are all in the pattern
+     * @param pattern the pattern, strictly ascending
+     * @param from the position of the first item of the pattern after the item of the node
+     * @return true if an itemset ending at or below the node is a subset of the pattern
+     */
+    private boolean containsSubsetOf(int node, int[] pattern, int from) {
+        if (ends[node]) {
+            return true;
+        }
+        int[] items = childItems[node];
+        int count = childCounts[node];
+        int c = 0;
+        int i = from;
+        if (count > (pattern.length - from) * SEARCH_RATIO) {
+            // many children: search each remaining item of the pattern among them
+            for (; i < pattern.length && c < count; i++) {
+                int position = Arrays.binarySearch(items, c, count, pattern[i]);
+                if (position >= 0) {
+                    if (containsSubsetOf(children[node][position], pattern, i + 1)) {
+                        return true;
+                    }
+                    c = position + 1;
+                } else {
+                    c = -position - 1;
+                }
+            }
+            return false;
+        }
+        // merge the children with the remaining items of the pattern
+        while (c < count && i < pattern.length) {
+            if (items[c] < pattern[i]) {
+                c++;
+            } else if (items[c] > pattern[i]) {
+                i++;
+            } else {
+                if (containsSubsetOf(children[node][c], pattern, i + 1)) {
+                    return true;
+                }
+                c++;
+                i++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create a node without children
+     * @return the id of the node
+     */
+    private int newNode() {
+        if (nodeCount == childCounts.length) {
+            int capacity = nodeCount * 2;
+            childItems = Arrays.copyOf(childItems, capacity);
+            children = Arrays.copyOf(children, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        childItems[nodeCount] = new int[2];
+        children[nodeCount] = new int[2];
+        return nodeCount++;
+    }
+
+    /**
+     * Add an itemset to the trie
+     * @param itemset an itemset whose items are strictly ascending
+     */
+    private void insert(int[] itemset) {
+        int node = 0;
+        for (int item : itemset) {
+            int position = Arrays.binarySearch(childItems[node], 0, childCounts[node], item);
+            if (position >= 0) {
+                node = children[node][position];
+                continue;
+            }
+            position = -position - 1;
+            int child = newNode();
+            int count = childCounts[node];
+            if (count == childItems[node].length) {
+                childItems[node] = Arrays.copyOf(childItems[node], count * 2);
+                children[node] = Arrays.copyOf(children[node], count * 2);
+            }
+            System.arraycopy(childItems[node], position, childItems[node], position + 1, count - position);
+            System.arraycopy(children[node], position, children[node], position + 1, count - position);
+            childItems[node][position] = item;
+            children[node][position] = child;
+            childCounts[node]++;
+            node = child;
+        }
+        if (!ends[node]) {
+            ends[node] = true;
+            size++;
+        }
+    }
+
+    /**
+     * Get the number of patterns rejected without scanning the database
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of patterns checked against the database
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of absent itemsets in the cache
+     * @return the number of itemsets
+     */
+    public int size() {
+        return size;
+    }
+}
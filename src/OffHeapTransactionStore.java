@@ -0,0 +1,211 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * OffHeapTransactionStore stores the transactions outside of the Java heap, in
+ * direct buffers, in the compressed sparse row format of CsrTransactionStore:
+ * the items of all transactions follow each other, and each transaction has a
+ * position, a length and a weight. The garbage collector does not copy the
+ * items, and they are not counted in -Xmx (but in -XX:MaxDirectMemorySize, which
+ * is by default the same size).
+ *
+ * A direct buffer holds at most 2 GB, so the items are split into segments of
+ * SEGMENT_SIZE items; a transaction never spans two segments.
+ *
+ * Removing a pattern compacts the items of a transaction in place. Transactions
+ * that become identical are not merged, since this would need a map of the
+ * transactions on the heap: the support, the size and the counts of items and
+ * pairs are the same, they are only computed on more transactions.
+ */
+public class OffHeapTransactionStore implements TransactionStore {
+
+    /** Number of items of a segment (1 GB) */
+    private static final int SEGMENT_SIZE = 1 << 28;
+
+    /** The items of the transactions, by segment */
+    private final IntBuffer[] segments;
+    /** The position of the first item of each transaction (segment * SEGMENT_SIZE + index) */
+    private final LongBuffer offsets;
+    /** The current number of items of each transaction */
+    private final IntBuffer lengths;
+    /** The weight of each transaction */
+    private final IntBuffer weights;
+    /** Number of transactions */
+    private final int size;
+    /** Number of transactions of the original database */
+    private final int transactionCount;
+    /** Size in bits of the transactions */
+    private int sizeInBits = 0;
+    /** Length of the longest transaction */
+    private final int maxLength;
+    /** Buffer holding a transaction being modified */
+    private final int[] buffer;
+
+    /**
+     * Constructor
+     * @param database the source store (it is not modified)
+     */
+    public OffHeapTransactionStore(TransactionStore database) {
+        size = database.size();
+        maxLength = database.getMaxLength();
+        buffer = new int[Math.max(1, maxLength)];
+        offsets = allocateLongs(size);
+        lengths = allocateInts(size);
+        weights = allocateInts(size);
+
+        // place the transactions in the segments
+        long[] segmentSizes = new long[1];
+        int segment = 0;
+        long position = 0;
+        for (int tid = 0; tid < size; tid++) {
+            int length = database.getLength(tid);
+            if (position + length > SEGMENT_SIZE) {
+                segment++;
+                position = 0;
+                if (segment == segmentSizes.length) {
+                    segmentSizes = Arrays.copyOf(segmentSizes, segment * 2);
+                }
+            }
+            offsets.put(tid, (long) segment * SEGMENT_SIZE + position);
+            position += length;
+            segmentSizes[segment] = position;
+        }
+        segments = new IntBuffer[segment + 1];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = allocateInts((int) segmentSizes[s]);
+        }
+
+        int count = 0;
+        for (int tid = 0; tid < size; tid++) {
+            int length = database.getItems(tid, buffer);
+            long offset = offsets.get(tid);
+            segments[(int) (offset / SEGMENT_SIZE)].put((int) (offset % SEGMENT_SIZE), buffer, 0, length);
+            lengths.put(tid, length);
+            weights.put(tid, database.getWeight(tid));
+            count += database.getWeight(tid);
+            sizeInBits += length * Integer.SIZE * database.getWeight(tid);
+        }
+        transactionCount = count;
+    }
+
+    /**
+     * Copy constructor
+     * @param source the store to copy
+     */
+    private OffHeapTransactionStore(OffHeapTransactionStore source) {
+        size = source.size;
+        maxLength = source.maxLength;
+        buffer = new int[source.buffer.length];
+        transactionCount = source.transactionCount;
+        sizeInBits = source.sizeInBits;
+        offsets = source.offsets;
+        lengths = allocateInts(size);
+        lengths.put(source.lengths.duplicate().clear());
+        weights = allocateInts(size);
+        weights.put(source.weights.duplicate().clear());
+        segments = new IntBuffer[source.segments.length];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = allocateInts(source.segments[s].capacity());
+            segments[s].put(source.segments[s].duplicate().clear());
+        }
+    }
+
+    private static IntBuffer allocateInts(int count) {
+        return ByteBuffer.allocateDirect(Math.max(1, count) * Integer.BYTES).order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+    }
+
+    private static LongBuffer allocateLongs(int count) {
+        return ByteBuffer.allocateDirect(Math.max(1, count) * Long.BYTES).order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getWeight(int tid) {
+        return weights.get(tid);
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    @Override
+    public int getLength(int tid) {
+        return lengths.get(tid);
+    }
+
+    @Override
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public int getItems(int tid, int[] buffer) {
+        long offset = offsets.get(tid);
+        int length = lengths.get(tid);
+        segments[(int) (offset / SEGMENT_SIZE)].get((int) (offset % SEGMENT_SIZE), buffer, 0, length);
+        return length;
+    }
+
+    @Override
+    public boolean contains(int tid, int[] pattern) {
+        int length = lengths.get(tid);
+        if (length < pattern.length) {
+            return false;
+        }
+        long offset = offsets.get(tid);
+        IntBuffer items = segments[(int) (offset / SEGMENT_SIZE)];
+        // same merge as CoverKernel.containsAll, reading the items in place
+        int i = (int) (offset % SEGMENT_SIZE);
+        int end = i + length;
+        int j = 0;
+        while (i < end && j < pattern.length) {
+            int item = items.get(i);
+            if (item == pattern[j]) {
+                i++;
+                j++;
+            } else if (item < pattern[j]) {
+                i++;
+            } else {
+                return false;
+            }
+        }
+        return j == pattern.length;
+    }
+
+    @Override
+    public int removeItemset(int[] pattern) {
+        int modified = 0;
+        for (int tid = 0; tid < size; tid++) {
+            if (contains(tid, pattern)) {
+                int length = getItems(tid, buffer);
+                int newLength = CoverKernel.removePattern(buffer, length, pattern);
+                long offset = offsets.get(tid);
+                segments[(int) (offset / SEGMENT_SIZE)].put((int) (offset % SEGMENT_SIZE), buffer, 0, newLength);
+                lengths.put(tid, newLength);
+                sizeInBits -= (length - newLength) * Integer.SIZE * weights.get(tid);
+                modified++;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public int getSizeInBits() {
+        return sizeInBits;
+    }
+
+    @Override
+    public OffHeapTransactionStore copy() {
+        return new OffHeapTransactionStore(this);
+    }
+}
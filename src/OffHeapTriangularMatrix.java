@@ -0,0 +1,268 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OffHeapTriangularMatrix counts the pairs of items in a hash table stored
+ * outside of the Java heap, in direct buffers. There is no object per pair, so
+ * the garbage collector has nothing to trace or copy when the matrix holds
+ * hundreds of millions of pairs, and the memory is not taken from -Xmx (but from
+ * -XX:MaxDirectMemorySize, which is by default the same size).
+ *
+ * A pair {i, j} with i <= j is the 64-bit key (i, j), in an open addressing table
+ * with linear probing. The pair {Integer.MIN_VALUE, Integer.MIN_VALUE} marks an
+ * empty slot, so it cannot be counted. getAllPatternsWithOccurrences() returns
+ * the pairs in ascending order of (i, j).
+ *
+ * The slots are numbered by a long, and split into segments of SEGMENT_SLOTS
+ * slots, each one a pair of direct buffers (keys and counts), so the table is not
+ * limited by the size of a buffer. A slot takes 12 bytes, and the table doubles
+ * before it is more than half full, so a pair takes between 24 and 48 bytes and
+ * the number of pairs is only limited by the direct memory.
+ */
+public class OffHeapTriangularMatrix implements PairCountMatrix {
+
+    /** Key of an empty slot */
+    private static final long EMPTY = Long.MIN_VALUE;
+    /** Initial number of slots */
+    private static final long DEFAULT_CAPACITY = 1 << 10;
+    /** Number of bits of the position of a slot in its segment */
+    private static final int SEGMENT_BITS = 24;
+    /** Number of slots of a segment (128 MB of keys) */
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_BITS;
+
+    /** The key of each slot, by segment */
+    private LongBuffer[] keys;
+    /** The count of each slot, by segment */
+    private IntBuffer[] counts;
+    /** Number of slots, a power of two */
+    private long capacity;
+    /** Number of bits of the hash that give the first slot of a key */
+    private int hashBits;
+    /** Number of pairs */
+    private long size = 0;
+
+    /**
+     * Constructor
+     */
+    public OffHeapTriangularMatrix() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param capacity the initial number of slots, a power of two
+     */
+    private OffHeapTriangularMatrix(long capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * Allocate empty buffers
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(long capacity) {
+        this.capacity = capacity;
+        this.hashBits = Long.numberOfTrailingZeros(capacity);
+        int segmentSlots = (int) Math.min(capacity, SEGMENT_SLOTS);
+        int segmentCount = (int) (capacity / segmentSlots);
+        keys = new LongBuffer[segmentCount];
+        counts = new IntBuffer[segmentCount];
+        for (int segment = 0; segment < segmentCount; segment++) {
+            keys[segment] = ByteBuffer.allocateDirect(segmentSlots * Long.BYTES).order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+            counts[segment] = ByteBuffer.allocateDirect(segmentSlots * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        clear();
+    }
+
+    /**
+     * Get the key of a slot
+     * @param slot the slot
+     * @return the key, or EMPTY
+     */
+    private long getKey(long slot) {
+        return keys[(int) (slot >>> SEGMENT_BITS)].get((int) slot & (SEGMENT_SLOTS - 1));
+    }
+
+    /**
+     * Get the count of a slot
+     * @param slot the slot
+     * @return the count
+     */
+    private int getCount(long slot) {
+        return counts[(int) (slot >>> SEGMENT_BITS)].get((int) slot & (SEGMENT_SLOTS - 1));
+    }
+
+    /**
+     * Set the key and the count of a slot
+     * @param slot the slot
+     * @param key the key
+     * @param count the count
+     */
+    private void put(long slot, long key, int count) {
+        keys[(int) (slot >>> SEGMENT_BITS)].put((int) slot & (SEGMENT_SLOTS - 1), key);
+        counts[(int) (slot >>> SEGMENT_BITS)].put((int) slot & (SEGMENT_SLOTS - 1), count);
+    }
+
+    /**
+     * Calculates the key of a pair
+     * @param i an item
+     * @param j an item
+     * @return the key, whose signed order is the order of (min, max)
+     */
+    private static long key(int i, int j) {
+        if (i > j) {
+            int temp = i;
+            i = j;
+            j = temp;
+        }
+        return ((long) i << 32) | ((j ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Find the slot of a key
+     * @param key the key
+     * @return the slot holding the key, or the empty slot where it would be added
+     */
+    private long slotOf(long key) {
+        // the top bits of a multiplicative hash
+        long slot = hashBits == 0 ? 0 : (key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - hashBits);
+        while (true) {
+            long current = getKey(slot);
+            if (current == key || current == EMPTY) {
+                return slot;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Add a value to the count of a key, adding the key if needed
+     * @param key the key
+     * @param value the value to add
+     */
+    private void add(long key, int value) {
+        long slot = slotOf(key);
+        if (getKey(slot) == EMPTY) {
+            if (size + 1 > capacity / 2) {
+                grow();
+                slot = slotOf(key);
+            }
+            put(slot, key, value);
+            size++;
+        } else {
+            put(slot, key, getCount(slot) + value);
+        }
+    }
+
+    /**
+     * Double the number of slots
+     */
+    private void grow() {
+        LongBuffer[] oldKeys = keys;
+        IntBuffer[] oldCounts = counts;
+        allocate(capacity * 2);
+        for (int segment = 0; segment < oldKeys.length; segment++) {
+            LongBuffer segmentKeys = oldKeys[segment];
+            for (int position = 0; position < segmentKeys.capacity(); position++) {
+                long key = segmentKeys.get(position);
+                if (key != EMPTY) {
+                    put(slotOf(key), key, oldCounts[segment].get(position));
+                    size++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void incrementCount(int i, int j) {
+        add(key(i, j), 1);
+    }
+
+    @Override
+    public void addToCount(int i, int j, int count) {
+        add(key(i, j), count);
+    }
+
+    @Override
+    public int getSupportForItems(int i, int j) {
+        long slot = slotOf(key(i, j));
+        return getKey(slot) == EMPTY ? 0 : getCount(slot);
+    }
+
+    @Override
+    public void setSupport(Integer i, Integer j, int support) {
+        setSupport(i.intValue(), j.intValue(), support);
+    }
+
+    @Override
+    public void setSupport(int i, int j, int support) {
+        long key = key(i, j);
+        add(key, 0);
+        put(slotOf(key), key, support);
+    }
+
+    @Override
+    public List<Pair> getAllPatternsWithOccurrences() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many pairs for a list: " + size);
+        }
+        long[] pairKeys = new long[(int) size];
+        int count = 0;
+        for (LongBuffer segmentKeys : keys) {
+            for (int position = 0; position < segmentKeys.capacity(); position++) {
+                long key = segmentKeys.get(position);
+                if (key != EMPTY) {
+                    pairKeys[count++] = key;
+                }
+            }
+        }
+        Arrays.sort(pairKeys);
+        List<Pair> patterns = new ArrayList<>(count);
+        for (long key : pairKeys) {
+            int i = (int) (key >> 32);
+            int j = (int) key ^ Integer.MIN_VALUE;
+            patterns.add(new Pair(new int[] { i, j }, getCount(slotOf(key))));
+        }
+        return patterns;
+    }
+
+    @Override
+    public void clear() {
+        for (LongBuffer segmentKeys : keys) {
+            for (int position = 0; position < segmentKeys.capacity(); position++) {
+                segmentKeys.put(position, EMPTY);
+            }
+        }
+        size = 0;
+    }
+
+    @Override
+    public OffHeapTriangularMatrix emptyCopy() {
+        return new OffHeapTriangularMatrix(capacity);
+    }
+
+    /**
+     * Get the number of pairs
+     * @return the number of pairs with a count
+     */
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder temp = new StringBuilder();
+        for (Pair pair : getAllPatternsWithOccurrences()) {
+            temp.append(pair.pattern[0]).append(' ').append(pair.pattern[1]).append(" : ").append(pair.count)
+                    .append('\n');
+        }
+        return temp.toString();
+    }
+}
@@ -1,6 +1,16 @@
+import java.util.Comparator;
 
 class Pair{
 
+	/** Orders pairs by decreasing count, then by ascending items, so that ties do not depend on the matrix */
+	static final Comparator<Pair> BY_DECREASING_COUNT = (pair1, pair2) -> {
+		int order = Integer.compare(pair2.count, pair1.count);
+		for (int i = 0; order == 0 && i < Math.min(pair1.pattern.length, pair2.pattern.length); i++) {
+			order = Integer.compare(pair1.pattern[i], pair2.pattern[i]);
+		}
+		return order != 0 ? order : Integer.compare(pair1.pattern.length, pair2.pattern.length);
+	};
+
 	int[] pattern;
 	int count;
 	
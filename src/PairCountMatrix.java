@@ -0,0 +1,32 @@
+import java.util.List;
+
+/**
+ * PairCountMatrix is a triangular matrix of the count of each pair of items,
+ * used by the HMP runners to choose the patterns of length 2. Besides the
+ * operations of AbstractTriangularMatrix, it lists all its pairs and can be
+ * emptied to count the pairs of a residual database.
+ *
+ * @see SparseTriangularMatrix
+ * @see OffHeapTriangularMatrix
+ * @see DenseTriangularMatrix
+ */
+public interface PairCountMatrix extends AbstractTriangularMatrix {
+
+    /**
+     * Get all pairs of items with their count
+     * @return the pairs, each one sorted, with their count
+     */
+    List<Pair> getAllPatternsWithOccurrences();
+
+    /**
+     * Remove all the counts
+     */
+    void clear();
+
+    /**
+     * Create an empty matrix of the same kind. It is used instead of clear() when
+     * the matrix is shared and must not be modified.
+     * @return the empty matrix
+     */
+    PairCountMatrix emptyCopy();
+}
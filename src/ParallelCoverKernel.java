@@ -0,0 +1,163 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelCoverKernel calculates the same compressed size as CoverKernel, but
+ * splits the database into chunks of transactions that are covered in parallel
+ * on a ForkJoinPool. Each chunk computes the size of its remaining items and the
+ * usage of each code table slot, then the results are summed. Since each
+ * transaction is covered independently and all values are integers, the result
+ * is identical to the sequential one.
+ *
+ * Databases smaller than a threshold are covered sequentially, so that small
+ * datasets do not pay the scheduling overhead.
+ */
+public class ParallelCoverKernel {
+
+    /** Number of chunks created per thread, to balance the load between threads */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Number of threads */
+    private final int parallelism;
+    /** Databases with fewer transactions than this are covered sequentially */
+    private final int sequentialThreshold;
+    /** The kernel used for sequential evaluations */
+    private final CoverKernel sequentialKernel = new CoverKernel();
+    /** The pool of threads, created on first use */
+    private ForkJoinPool pool = null;
+    /** Usage of each code table slot computed by the last parallel evaluation */
+    private int[] usage = null;
+
+    /**
+     * Constructor
+     * @param parallelism the number of threads (1 to always cover sequentially)
+     * @param sequentialThreshold the minimum number of transactions to cover in parallel
+     */
+    public ParallelCoverKernel(int parallelism, int sequentialThreshold) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    /**
+     * Calculates the compressed size of a database using a code table
+     * @param database a list of sorted transactions (with fast random access)
+     * @param codeTable the patterns of the code table, in cover order
+     * @return the size of the remaining items plus the codes of the used patterns
+     */
+    public int coverSizeInBits(List<int[]> database, List<int[]> codeTable) {
+        if (parallelism == 1 || database.size() < sequentialThreshold) {
+            usage = null;
+            return sequentialKernel.coverSizeInBits(database, codeTable);
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        int chunkSize = Math.max(1, database.size() / (parallelism * CHUNKS_PER_THREAD));
+        ChunkResult result = pool.invoke(new CoverTask(database, null, codeTable, 0, database.size(), chunkSize));
+        usage = result.usage;
+        return result.sizeInBits + CoverKernel.codeSizeInBits(codeTable, result.usage);
+    }
+
+    /**
+     * Calculates the compressed size of a weighted database using a code table.
+     * The store is only read, so it can be shared by the threads, and each chunk
+     * is read with one scan() of the store.
+     * @param database the distinct transactions and their weights
+     * @param codeTable the patterns of the code table, in cover order
+     * @return the size of the remaining items plus the codes of the used patterns
+     */
+    public int coverSizeInBits(TransactionStore database, List<int[]> codeTable) {
+        if (parallelism == 1 || database.size() < sequentialThreshold) {
+            usage = null;
+            return sequentialKernel.coverSizeInBits(database, codeTable);
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        int chunkSize = Math.max(1, database.size() / (parallelism * CHUNKS_PER_THREAD));
+        ChunkResult result = pool.invoke(new CoverTask(null, database, codeTable, 0, database.size(), chunkSize));
+        usage = result.usage;
+        return result.sizeInBits + CoverKernel.codeSizeInBits(codeTable, result.usage);
+    }
+
+    /**
+     * Get the usage of a code table slot computed by the last evaluation
+     * @param slot the slot id
+     * @return the number of transactions covered by the pattern of this slot
+     */
+    public int getUsage(int slot) {
+        return usage == null ? sequentialKernel.getUsage(slot) : usage[slot];
+    }
+
+    /**
+     * Get the number of threads
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** The result of covering a chunk of transactions */
+    private static class ChunkResult {
+        /** Size in bits of the items that are not covered */
+        final int sizeInBits;
+        /** Usage of each code table slot */
+        final int[] usage;
+
+        ChunkResult(int sizeInBits, int[] usage) {
+            this.sizeInBits = sizeInBits;
+            this.usage = usage;
+        }
+    }
+
+    /**
+     * A task that covers a range of transactions, splitting it if it is larger than a chunk.
+     * The transactions are either a list or a weighted store (the other one is null).
+     */
+    private static class CoverTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<int[]> database;
+        private final TransactionStore store;
+        private final List<int[]> codeTable;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        CoverTask(List<int[]> database, TransactionStore store, List<int[]> codeTable, int from, int to,
+                int chunkSize) {
+            this.database = database;
+            this.store = store;
+            this.codeTable = codeTable;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            if (to - from <= chunkSize) {
+                int[] usage = new int[codeTable.size()];
+                int sizeInBits = database != null
+                        ? new CoverKernel().coverSizeInBits(database, from, to, codeTable, usage)
+                        : new CoverKernel().coverSizeInBits(store, from, to, codeTable, usage);
+                return new ChunkResult(sizeInBits, usage);
+            }
+            int middle = (from + to) >>> 1;
+            CoverTask left = new CoverTask(database, store, codeTable, from, middle, chunkSize);
+            CoverTask right = new CoverTask(database, store, codeTable, middle, to, chunkSize);
+            left.fork();
+            ChunkResult rightResult = right.compute();
+            ChunkResult leftResult = left.join();
+            // merge the usage of the right part into the usage of the left part
+            for (int slot = 0; slot < leftResult.usage.length; slot++) {
+                leftResult.usage[slot] += rightResult.usage[slot];
+            }
+            return new ChunkResult(leftResult.sizeInBits + rightResult.sizeInBits, leftResult.usage);
+        }
+    }
+}
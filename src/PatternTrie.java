@@ -0,0 +1,212 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PatternTrie is a prefix tree over sorted patterns, used to count the support
+ * of all the patterns of a code table in a single pass over the database,
+ * instead of one scan per pattern.
+ *
+ * Each node is an item, and a pattern ends at the node of its last item. For each
+ * transaction, the trie is walked from the root: the children of a node are
+ * merged with the items of the transaction that follow the item of the node, so
+ * each shared prefix is matched once for all the patterns that start with it.
+ *
+ * Only patterns whose items are strictly ascending are put in the trie. The
+ * support of the other patterns is counted by TransactionStore.support(), so that
+ * the results are the same as when each pattern is counted on its own.
+ */
+public class PatternTrie {
+
+    /** A node searches the items of the transaction among its children when it has this many times more children */
+    private static final int SEARCH_RATIO = 4;
+
+    /** The items of the children of each node, in ascending order */
+    private int[][] childItems = new int[16][];
+    /** The children of each node, in the order of their items */
+    private int[][] children = new int[16][];
+    /** Number of children of each node */
+    private int[] childCounts = new int[16];
+    /** The pattern ending at each node, or -1 */
+    private int[] patternAt = new int[16];
+    /** Number of nodes (the root is node 0) */
+    private int nodeCount = 0;
+    /** The support of each distinct pattern of the trie */
+    private int[] supports;
+    /** Number of distinct patterns of the trie */
+    private int patternCount = 0;
+
+    /**
+     * Constructor
+     */
+    private PatternTrie() {
+        newNode();
+    }
+
+    /**
+     * Count the support of each pattern in one pass over a database
+     * @param patterns the patterns (an empty pattern has a support of 0)
+     * @param database the database
+     * @return the support of each pattern, in the order of the list
+     */
+    public static int[] countSupports(List<int[]> patterns, TransactionStore database) {
+        PatternTrie trie = new PatternTrie();
+        int[] nodes = new int[patterns.size()];
+        int[] result = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            int[] pattern = patterns.get(p);
+            nodes[p] = pattern.length > 0 && isStrictlyAscending(pattern) ? trie.insert(pattern) : -1;
+        }
+        trie.count(database);
+        for (int p = 0; p < patterns.size(); p++) {
+            int[] pattern = patterns.get(p);
+            if (nodes[p] >= 0) {
+                result[p] = trie.supports[trie.patternAt[nodes[p]]];
+            } else if (pattern.length > 0) {
+                result[p] = database.support(pattern);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if the items of a pattern are sorted and distinct
+     * @param pattern the pattern
+     * @return true if each item is larger than the previous one
+     */
+    private static boolean isStrictlyAscending(int[] pattern) {
+        for (int i = 1; i < pattern.length; i++) {
+            if (pattern[i - 1] >= pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create a node without children
+     * @return the id of the node
+     */
+    private int newNode() {
+        if (nodeCount == childCounts.length) {
+            int capacity = nodeCount * 2;
+            childItems = Arrays.copyOf(childItems, capacity);
+            children = Arrays.copyOf(children, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            patternAt = Arrays.copyOf(patternAt, capacity);
+        }
+        childItems[nodeCount] = new int[2];
+        children[nodeCount] = new int[2];
+        patternAt[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    /**
+     * Add a pattern to the trie
+     * @param pattern a pattern whose items are strictly ascending
+     * @return the node where the pattern ends
+     */
+    private int insert(int[] pattern) {
+        int node = 0;
+        for (int item : pattern) {
+            int position = Arrays.binarySearch(childItems[node], 0, childCounts[node], item);
+            if (position >= 0) {
+                node = children[node][position];
+                continue;
+            }
+            position = -position - 1;
+            int child = newNode();
+            int count = childCounts[node];
+            if (count == childItems[node].length) {
+                childItems[node] = Arrays.copyOf(childItems[node], count * 2);
+                children[node] = Arrays.copyOf(children[node], count * 2);
+            }
+            System.arraycopy(childItems[node], position, childItems[node], position + 1, count - position);
+            System.arraycopy(children[node], position, children[node], position + 1, count - position);
+            childItems[node][position] = item;
+            children[node][position] = child;
+            childCounts[node]++;
+            node = child;
+        }
+        if (patternAt[node] < 0) {
+            patternAt[node] = patternCount++;
+        }
+        return node;
+    }
+
+    /**
+     * Count the support of the patterns of the trie, in one scan of the database
+     * @param database the database
+     */
+    private void count(TransactionStore database) {
+        supports = new int[patternCount];
+        if (patternCount == 0) {
+            return;
+        }
+        int[] buffer = new int[Math.max(1, database.getMaxLength())];
+        database.scan(0, database.size(), buffer, (tid, items, length) -> {
+            int weight = database.getWeight(tid);
+            if (weight != 0) {
+                visit(0, items, 0, length, weight);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Add the weight of a transaction to the patterns below a node
+     * @param node a node whose items are all in the transaction
+     * @param transaction the items of the transaction, sorted
+     * @param from the position of the first item of the transaction after the item of the node
+     * @param length the number of items of the transaction
+     * @param weight the weight of the transaction
+     */
+    private void visit(int node, int[] transaction, int from, int length, int weight) {
+        int[] items = childItems[node];
+        int count = childCounts[node];
+        int c = 0;
+        int i = from;
+        if (count > (length - from) * SEARCH_RATIO) {
+            // many children: search each remaining item of the transaction among them
+            for (; i < length && c < count; i++) {
+                int position = Arrays.binarySearch(items, c, count, transaction[i]);
+                if (position >= 0) {
+                    visitChild(children[node][position], transaction, i + 1, length, weight);
+                    c = position + 1;
+                } else {
+                    c = -position - 1;
+                }
+            }
+            return;
+        }
+        // merge the children with the remaining items of the transaction
+        while (c < count && i < length) {
+            if (items[c] < transaction[i]) {
+                c++;
+            } else if (items[c] > transaction[i]) {
+                i++;
+            } else {
+                visitChild(children[node][c], transaction, i + 1, length, weight);
+                c++;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Add the weight of a transaction to the pattern of a matched node and to the
+     * patterns below it
+     * @param child a node whose items are all in the transaction
+     * @param transaction the items of the transaction, sorted
+     * @param from the position of the first item of the transaction after the item of the node
+     * @param length the number of items of the transaction
+     * @param weight the weight of the transaction
+     */
+    private void visitChild(int child, int[] transaction, int from, int length, int weight) {
+        if (patternAt[child] >= 0) {
+            supports[patternAt[child]] += weight;
+        }
+        if (childCounts[child] > 0) {
+            visit(child, transaction, from, length, weight);
+        }
+    }
+}
@@ -29,7 +29,7 @@ import java.util.*;
  * @see AlgoEclat
  * @author Philippe Fournier-Viger
  */
-public class SparseTriangularMatrix implements AbstractTriangularMatrix {
+public class SparseTriangularMatrix implements PairCountMatrix {
 	
 	// the triangular matrix is a hashmap of hashmaps
 	// where the key is an item I, then the value is a map where each entry is a key representing an item J
@@ -112,6 +112,32 @@ public class SparseTriangularMatrix implements AbstractTriangularMatrix {
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see ca.pfv.spmf.datastructures.triangularmatrix.AbstractTriangularMatrix#addToCount(int, int, int)
+	 */
+	public void addToCount(int i, int j, int count) {
+		if(i > j) {
+			int temp = i;
+			i = j;
+			j = temp;
+		}
+		// First get the map of i
+		Map<Integer, Integer> mapCount = matrix.get(i);
+		if(mapCount == null) {
+			mapCount = new HashMap<Integer,Integer>();
+			matrix.put(i, mapCount);
+			mapCount.put(j, count);
+		}else {
+			// Second, add to the count of i,j
+			Integer oldCount = mapCount.get(j);
+			if(oldCount == null) {
+				mapCount.put(j, count);
+			}else {
+				mapCount.put(j, oldCount + count);
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see ca.pfv.spmf.datastructures.triangularmatrix.AbstractTriangularMatrix#getSupportForItems(int, int)
 	 */
@@ -268,4 +294,12 @@ public class SparseTriangularMatrix implements AbstractTriangularMatrix {
 	public void clear() {
 		matrix.clear();
 	}
+
+	/**
+	 * Create an empty matrix.
+	 * @return the empty matrix
+	 */
+	public SparseTriangularMatrix emptyCopy() {
+		return new SparseTriangularMatrix();
+	}
 }
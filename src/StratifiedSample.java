@@ -0,0 +1,190 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * StratifiedSample is a random sample of the transactions of a residual database,
+ * used to estimate the usage of a candidate pattern without scanning the whole
+ * database. The transactions are divided in strata by length (powers of two),
+ * and each stratum is sampled in proportion to its number of transactions, so
+ * that long transactions, which contain most patterns, are always represented.
+ *
+ * Only an upper bound of the usage is computed: the upper bound of an
+ * Agresti-Coull interval in each stratum, summed over the strata. The bound is
+ * therefore conservative, but it is not guaranteed: a candidate rejected on its upper bound may have a
+ * higher usage with a small probability, which depends on the z value.
+ *
+ * The sampled transactions are copied, and accepted patterns must be removed
+ * from the sample with removeItemset() as they are removed from the database.
+ */
+public class StratifiedSample {
+
+    /** Number of strata (lengths up to 2^31) */
+    private static final int STRATA = 32;
+
+    /** The sampled transactions */
+    private final int[][] transactions;
+    /** The number of remaining items of each sampled transaction */
+    private final int[] lengths;
+    /** The signature of the remaining items of each sampled transaction */
+    private final long[] signatures;
+    /** The stratum of each sampled transaction */
+    private final int[] strata;
+    /** Number of transactions of the database in each stratum */
+    private final int[] populationSizes = new int[STRATA];
+    /** Number of sampled transactions in each stratum */
+    private final int[] sampleSizes = new int[STRATA];
+    /** Number of transactions of the database */
+    private final int transactionCount;
+    /** The z value of the confidence intervals */
+    private final double z;
+    /** Number of sampled transactions of each stratum containing the last pattern */
+    private final int[] hits = new int[STRATA];
+    /** Upper bound of the usage of the last pattern */
+    private int upperBound;
+
+    /**
+     * Constructor
+     * @param database the residual database
+     * @param sampleSize the number of transactions to sample
+     * @param z the z value of the confidence intervals (e.g. 3 for about 99.7%)
+     * @param random the random number generator
+     */
+    public StratifiedSample(TransactionStore database, int sampleSize, double z, Random random) {
+        this.z = z;
+        this.transactionCount = database.getTransactionCount();
+        // cumulative weights of the transactions of each stratum, in transaction order
+        int[][] stratumTids = new int[STRATA][];
+        long[][] stratumWeights = new long[STRATA][];
+        int[] stratumCounts = new int[STRATA];
+        for (int tid = 0; tid < database.size(); tid++) {
+            if (database.getWeight(tid) > 0) {
+                stratumCounts[stratumOf(database.getLength(tid))]++;
+            }
+        }
+        for (int h = 0; h < STRATA; h++) {
+            stratumTids[h] = new int[stratumCounts[h]];
+            stratumWeights[h] = new long[stratumCounts[h]];
+            stratumCounts[h] = 0;
+        }
+        for (int tid = 0; tid < database.size(); tid++) {
+            if (database.getWeight(tid) == 0) {
+                // a transaction merged into an identical one
+                continue;
+            }
+            int h = stratumOf(database.getLength(tid));
+            populationSizes[h] += database.getWeight(tid);
+            stratumTids[h][stratumCounts[h]] = tid;
+            stratumWeights[h][stratumCounts[h]] = populationSizes[h];
+            stratumCounts[h]++;
+        }
+
+        // proportional allocation, with at least one transaction per non-empty stratum
+        int total = 0;
+        for (int h = 0; h < STRATA; h++) {
+            if (populationSizes[h] > 0) {
+                sampleSizes[h] = Math.max(1, (int) ((long) sampleSize * populationSizes[h] / Math.max(1, transactionCount)));
+                total += sampleSizes[h];
+            }
+        }
+        transactions = new int[total][];
+        lengths = new int[total];
+        signatures = new long[total];
+        strata = new int[total];
+
+        // draw the transactions of each stratum with a probability proportional to their weight
+        int position = 0;
+        for (int h = 0; h < STRATA; h++) {
+            for (int i = 0; i < sampleSizes[h]; i++) {
+                long target = (long) (random.nextDouble() * populationSizes[h]) + 1;
+                int index = Arrays.binarySearch(stratumWeights[h], target);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                int tid = stratumTids[h][index];
+                transactions[position] = new int[database.getLength(tid)];
+                lengths[position] = database.getItems(tid, transactions[position]);
+                signatures[position] = CoverKernel.signature(transactions[position], 0, lengths[position]);
+                strata[position] = h;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Get the stratum of a transaction
+     * @param length the length of the transaction
+     * @return the stratum (the number of bits of the length)
+     */
+    private static int stratumOf(int length) {
+        return Math.min(STRATA - 1, Integer.SIZE - Integer.numberOfLeadingZeros(length));
+    }
+
+    /**
+     * Bound the usage of a sorted pattern in the database. The result is
+     * available with getUpperBound().
+     * @param pattern the pattern
+     */
+    public void evaluate(int[] pattern) {
+        Arrays.fill(hits, 0);
+        long signature = CoverKernel.signature(pattern);
+        for (int i = 0; i < transactions.length; i++) {
+            if (contains(i, pattern, signature)) {
+                hits[strata[i]]++;
+            }
+        }
+        double upper = 0;
+        double z2 = z * z;
+        for (int h = 0; h < STRATA; h++) {
+            if (sampleSizes[h] == 0) {
+                continue;
+            }
+            double n = sampleSizes[h] + z2;
+            double p = (hits[h] + z2 / 2) / n;
+            double halfWidth = z * Math.sqrt(p * (1 - p) / n);
+            upper += populationSizes[h] * Math.min(1, p + halfWidth);
+        }
+        upperBound = (int) Math.min(transactionCount, Math.ceil(upper));
+    }
+
+    /**
+     * Remove a sorted pattern from the sampled transactions that contain it
+     * @param pattern the pattern
+     */
+    public void removeItemset(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        for (int i = 0; i < transactions.length; i++) {
+            if (contains(i, pattern, signature)) {
+                lengths[i] = CoverKernel.removePattern(transactions[i], lengths[i], pattern);
+                signatures[i] = CoverKernel.signature(transactions[i], 0, lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Check if a sampled transaction contains a sorted pattern
+     * @param i the position of the transaction in the sample
+     * @param pattern the pattern
+     * @param patternSignature the signature of the pattern
+     * @return true if the transaction contains the pattern
+     */
+    private boolean contains(int i, int[] pattern, long patternSignature) {
+        return lengths[i] >= pattern.length && CoverKernel.mayContain(signatures[i], patternSignature)
+                && CoverKernel.containsAll(transactions[i], lengths[i], pattern);
+    }
+
+    /**
+     * Get the upper bound of the usage of the last evaluated pattern
+     * @return the upper bound
+     */
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Get the number of sampled transactions
+     * @return the sample size
+     */
+    public int size() {
+        return transactions.length;
+    }
+}
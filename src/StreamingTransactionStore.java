@@ -0,0 +1,517 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * StreamingTransactionStore keeps the transactions on disk, in a spill file, for
+ * databases that do not fit in memory. The passes over the database (item
+ * frequencies, pair counts, support of a pattern, removal of a pattern, and the
+ * cover and the supports of a code table, which go through scan()) are
+ * sequential scans of the file through a window of a fixed size, so the memory
+ * used does not depend on the number of items. Only the position and the
+ * current length of each transaction are kept in memory, for the random
+ * accesses of getItems() and contains(), which open the file for each call.
+ *
+ * Several threads can scan the store at the same time, each with its own buffer,
+ * as ParallelCoverKernel does. The other methods are not thread-safe.
+ *
+ * The spill file is never modified. Removing a pattern only adds it to a list of
+ * filters: when a transaction is read, the filters are applied to it in the
+ * order in which the patterns were removed, which gives the transaction of the
+ * residual database. When there are MAX_FILTERS filters, the next removal writes
+ * the filtered transactions to a new spill file, so that the scans do not slow
+ * down. A copy shares the spill file and takes a copy of the filters, so it is
+ * cheap.
+ *
+ * Identical transactions are not merged (each transaction has a weight of 1):
+ * finding them would need a map of all the transactions in memory.
+ *
+ * The spill file holds, for each transaction, its length and its items as 32-bit
+ * integers. It is created in the temporary directory and deleted when the JVM
+ * exits.
+ */
+public class StreamingTransactionStore implements TransactionStore {
+
+    /** Number of filters from which the next removal writes a new spill file */
+    private static final int MAX_FILTERS = 32;
+    /** Default size in bytes of the window through which the file is read */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 24;
+
+    /** The spill file */
+    private File file;
+    /** True if the spill file is only used by this store, which can delete it */
+    private boolean ownsFile;
+    /** The position in the spill file of each transaction */
+    private long[] positions;
+    /** The current number of items of each transaction */
+    private final int[] lengths;
+    /** The patterns removed since the spill file was written, in order */
+    private final List<int[]> filters;
+    /** Number of transactions */
+    private final int size;
+    /** Length of the longest transaction of the original database */
+    private final int maxLength;
+    /** Size in bits of the transactions */
+    private int sizeInBits;
+    /** Size in bytes of the window through which the file is read */
+    private final int windowSize;
+    /** Buffer holding a transaction */
+    private final int[] buffer;
+
+    /**
+     * Constructor
+     * @param file the spill file
+     * @param positions the position in the file of each transaction
+     * @param lengths the number of items of each transaction
+     * @param maxLength the length of the longest transaction
+     * @param windowSize the size in bytes of the window through which the file is read
+     */
+    private StreamingTransactionStore(File file, long[] positions, int[] lengths, int maxLength, int windowSize) {
+        this.file = file;
+        this.ownsFile = true;
+        this.positions = positions;
+        this.lengths = lengths;
+        this.filters = new ArrayList<>();
+        this.size = lengths.length;
+        this.maxLength = maxLength;
+        this.windowSize = Math.max(windowSize, (maxLength + 1) * Integer.BYTES);
+        this.buffer = new int[Math.max(1, maxLength)];
+        for (int length : lengths) {
+            sizeInBits += length * Integer.SIZE;
+        }
+    }
+
+    /**
+     * Copy constructor
+     * @param source the store to copy
+     */
+    private StreamingTransactionStore(StreamingTransactionStore source) {
+        this.file = source.file;
+        this.ownsFile = false;
+        this.positions = source.positions;
+        this.lengths = source.lengths.clone();
+        this.filters = new ArrayList<>(source.filters);
+        this.size = source.size;
+        this.maxLength = source.maxLength;
+        this.sizeInBits = source.sizeInBits;
+        this.windowSize = source.windowSize;
+        this.buffer = new int[source.buffer.length];
+    }
+
+    /**
+     * Read a transaction file into a spill file, without holding the database in
+     * memory
+     * @param fileName the path of the transaction file
+     * @param parallelism the number of threads used to parse the file
+     * @param windowSize the size in bytes of the window through which the spill file is read
+     * @return the store
+     * @throws TransactionFileParser.InvalidLineException if a token is not an
+     * integer; the exception holds the store of the transactions before the faulty line
+     * @throws IOException if a file cannot be read or written
+     */
+    public static StreamingTransactionStore fromFile(String fileName, int parallelism, int windowSize)
+            throws IOException {
+        File file = createSpillFile();
+        SpillWriter writer = new SpillWriter(file, windowSize);
+        NumberFormatException invalidLine = null;
+        try {
+            TransactionFileParser.parse(fileName, parallelism, chunk -> {
+                int[] items = new int[chunk.getMaxLength()];
+                for (int tid = 0; tid < chunk.size(); tid++) {
+                    writer.write(items, chunk.getItems(tid, items));
+                }
+            });
+        } catch (TransactionFileParser.InvalidLineException e) {
+            invalidLine = (NumberFormatException) e.getCause();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writer.close();
+        }
+        StreamingTransactionStore store = new StreamingTransactionStore(file, writer.getPositions(),
+                writer.getLengths(), writer.getMaxLength(), windowSize);
+        if (invalidLine != null) {
+            throw new TransactionFileParser.InvalidLineException(invalidLine, store);
+        }
+        return store;
+    }
+
+    /**
+     * Create an empty spill file, deleted when the JVM exits
+     * @return the file
+     * @throws IOException if the file cannot be created
+     */
+    private static File createSpillFile() throws IOException {
+        File file = File.createTempFile("hmp", ".spill");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Apply the filters to a transaction
+     * @param items the items of the transaction (modified)
+     * @param length the number of items
+     * @return the new number of items
+     */
+    private int applyFilters(int[] items, int length) {
+        for (int[] pattern : filters) {
+            if (length >= pattern.length && CoverKernel.containsAll(items, length, pattern)) {
+                length = CoverKernel.removePattern(items, length, pattern);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Read the transactions in order, and apply the filters to them
+     * @param visitor receives each transaction, until it returns false
+     */
+    private void scan(TransactionVisitor visitor) {
+        scan(0, size, buffer, visitor);
+    }
+
+    /**
+     * Read a range of transactions in order, and apply the filters to them. The
+     * window is not larger than the range, so that the chunks of a parallel pass
+     * do not each take a full window.
+     */
+    @Override
+    public void scan(int from, int to, int[] buffer, TransactionVisitor visitor) {
+        if (from >= to) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long filePosition = positions[from];
+            long rangeEnd = to < size ? positions[to] : channel.size();
+            int capacity = (int) Math.min(windowSize,
+                    Math.max(rangeEnd - filePosition, (long) (maxLength + 1) * Integer.BYTES));
+            ByteBuffer window = ByteBuffer.allocate(capacity);
+            window.flip();
+            for (int tid = from; tid < to; tid++) {
+                if (window.remaining() < Integer.BYTES) {
+                    filePosition = fill(channel, window, filePosition, Integer.BYTES);
+                }
+                int length = window.getInt();
+                if (window.remaining() < length * Integer.BYTES) {
+                    filePosition = fill(channel, window, filePosition, length * Integer.BYTES);
+                }
+                window.asIntBuffer().get(buffer, 0, length);
+                window.position(window.position() + length * Integer.BYTES);
+                if (!visitor.visit(tid, buffer, applyFilters(buffer, length))) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the next bytes of the file into the window
+     * @param channel the file
+     * @param window the window, ready to be read
+     * @param filePosition the position in the file of the byte after the window
+     * @param needed the number of bytes that must be in the window
+     * @return the new position in the file of the byte after the window
+     * @throws IOException if the file cannot be read
+     */
+    private static long fill(FileChannel channel, ByteBuffer window, long filePosition, int needed)
+            throws IOException {
+        window.compact();
+        while (window.position() < needed) {
+            int count = channel.read(window, filePosition);
+            if (count < 0) {
+                throw new IOException("Truncated spill file");
+            }
+            filePosition += count;
+        }
+        window.flip();
+        return filePosition;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getWeight(int tid) {
+        return 1;
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return size;
+    }
+
+    @Override
+    public int getLength(int tid) {
+        return lengths[tid];
+    }
+
+    @Override
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public int getItems(int tid, int[] buffer) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(bytes, positions[tid]);
+            bytes.flip();
+            int length = bytes.getInt();
+            bytes = ByteBuffer.allocate(length * Integer.BYTES);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, positions[tid] + Integer.BYTES + bytes.position()) < 0) {
+                    throw new IOException("Truncated spill file");
+                }
+            }
+            bytes.flip();
+            int[] items = length <= buffer.length ? buffer : new int[length];
+            bytes.asIntBuffer().get(items, 0, length);
+            length = applyFilters(items, length);
+            if (items != buffer) {
+                System.arraycopy(items, 0, buffer, 0, length);
+            }
+            return length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean contains(int tid, int[] pattern) {
+        if (lengths[tid] < pattern.length) {
+            return false;
+        }
+        return CoverKernel.containsAll(buffer, getItems(tid, buffer), pattern);
+    }
+
+    @Override
+    public int support(int[] pattern) {
+        int[] count = new int[1];
+        scan((tid, items, length) -> {
+            if (length >= pattern.length && CoverKernel.containsAll(items, length, pattern)) {
+                count[0]++;
+            }
+            return true;
+        });
+        return count[0];
+    }
+
+    @Override
+    public int support(int[] pattern, int minSupport) {
+        int[] count = new int[1];
+        int[] remaining = { size };
+        scan((tid, items, length) -> {
+            if (length >= pattern.length && CoverKernel.containsAll(items, length, pattern)) {
+                count[0]++;
+            }
+            remaining[0]--;
+            return count[0] + remaining[0] >= minSupport;
+        });
+        // remaining is 0 unless the scan stopped below the minimum support
+        return count[0] + remaining[0];
+    }
+
+    @Override
+    public boolean exists(int[] pattern) {
+        boolean[] found = new boolean[1];
+        scan((tid, items, length) -> {
+            found[0] = length >= pattern.length && CoverKernel.containsAll(items, length, pattern);
+            return !found[0];
+        });
+        return found[0];
+    }
+
+    @Override
+    public void countItems(MapIntToInt itemFrequency) {
+        scan((tid, items, length) -> {
+            for (int i = 0; i < length; i++) {
+                int frequency = itemFrequency.get(items[i]);
+                itemFrequency.put(items[i], frequency == -1 ? 1 : frequency + 1);
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void countPairs(AbstractTriangularMatrix matrix) {
+        scan((tid, items, length) -> {
+            for (int i = 0; i < length; i++) {
+                for (int j = i + 1; j < length; j++) {
+                    matrix.incrementCount(items[i], items[j]);
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Remove a sorted pattern from every transaction that contains it. The
+     * pattern is added to the filters; when there are already MAX_FILTERS filters,
+     * the filtered transactions are written to a new spill file instead.
+     * @param pattern the pattern
+     * @return the number of transactions that were modified
+     */
+    @Override
+    public int removeItemset(int[] pattern) {
+        filters.add(pattern);
+        int[] modified = new int[1];
+        if (filters.size() <= MAX_FILTERS) {
+            scan((tid, items, length) -> {
+                if (length < lengths[tid]) {
+                    sizeInBits -= (lengths[tid] - length) * Integer.SIZE;
+                    lengths[tid] = length;
+                    modified[0]++;
+                }
+                return true;
+            });
+            return modified[0];
+        }
+
+        // write the filtered transactions to a new spill file
+        try {
+            File newFile = createSpillFile();
+            SpillWriter writer = new SpillWriter(newFile, windowSize);
+            try {
+                scan((tid, items, length) -> {
+                    if (length < lengths[tid]) {
+                        sizeInBits -= (lengths[tid] - length) * Integer.SIZE;
+                        lengths[tid] = length;
+                        modified[0]++;
+                    }
+                    writer.write(items, length);
+                    return true;
+                });
+            } finally {
+                writer.close();
+            }
+            if (ownsFile) {
+                file.delete();
+            }
+            file = newFile;
+            ownsFile = true;
+            positions = writer.getPositions();
+            filters.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return modified[0];
+    }
+
+    @Override
+    public int getSizeInBits() {
+        return sizeInBits;
+    }
+
+    @Override
+    public StreamingTransactionStore copy() {
+        // the spill file is now shared, so no store deletes it
+        ownsFile = false;
+        return new StreamingTransactionStore(this);
+    }
+
+    /**
+     * Get the number of patterns that are applied to the transactions when they are read
+     * @return the number of filters
+     */
+    public int getFilterCount() {
+        return filters.size();
+    }
+
+    /** Writes transactions at the end of a spill file, through a window */
+    private static class SpillWriter {
+        /** The file */
+        private final FileChannel channel;
+        /** The bytes not written yet */
+        private final ByteBuffer window;
+        /** Position in the file of the next byte */
+        private long position = 0;
+        /** The position of each transaction */
+        private long[] positions = new long[1024];
+        /** The length of each transaction */
+        private int[] lengths = new int[1024];
+        /** Number of transactions */
+        private int size = 0;
+        /** Length of the longest transaction */
+        private int maxLength = 0;
+
+        SpillWriter(File file, int windowSize) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            window = ByteBuffer.allocate(windowSize);
+        }
+
+        /**
+         * Append a transaction
+         * @param items the items of the transaction
+         * @param length the number of items
+         */
+        void write(int[] items, int length) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            positions[size] = position;
+            lengths[size++] = length;
+            maxLength = Math.max(maxLength, length);
+            try {
+                putInt(length);
+                for (int i = 0; i < length; i++) {
+                    putInt(items[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            if (window.remaining() < Integer.BYTES) {
+                flush();
+            }
+            window.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        private void flush() throws IOException {
+            window.flip();
+            while (window.hasRemaining()) {
+                channel.write(window);
+            }
+            window.clear();
+        }
+
+        /**
+         * Write the remaining bytes and close the file
+         * @throws IOException if the file cannot be written
+         */
+        void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        long[] getPositions() {
+            return Arrays.copyOf(positions, size);
+        }
+
+        int[] getLengths() {
+            return Arrays.copyOf(lengths, size);
+        }
+
+        int getMaxLength() {
+            return maxLength;
+        }
+    }
+}
@@ -16,11 +16,7 @@
 * You should have received a copy of the GNU General Public License along with
 * SPMF. If not, see <http://www.gnu.org/licenses/>.
 */
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -46,55 +42,28 @@ public class TransactionDatabase {
 	}
 
 	/**
-	 * Method to load a file containing a transaction database into memory
+	 * Method to load a file containing a transaction database into memory.
+	 * The file is parsed in parallel by TransactionFileParser, which skips the
+	 * empty lines and the comment and metadata lines. An item that is not an
+	 * integer stops the loading: the error is printed, and the transactions
+	 * before the faulty line are kept.
 	 * @param path the path of the file
 	 * @throws IOException exception if error reading the file
 	 */
 	public void loadFile(String path) throws IOException {
-		String thisLine; // variable to read each line
-		BufferedReader myInput = null; // object to read the file
+		TransactionStore store;
 		try {
-			FileInputStream fin = new FileInputStream(new File(path));
-			myInput = new BufferedReader(new InputStreamReader(fin));
-			// for each line
-			while ((thisLine = myInput.readLine()) != null) {
-				// if the line is not a comment, is not empty or is not other
-				// kind of metadata
-				if (thisLine.isEmpty() == false &&
-						thisLine.charAt(0) != '#' && thisLine.charAt(0) != '%'
-						&& thisLine.charAt(0) != '@') {
-					// split the line according to spaces and then
-					// call "addTransaction" to process this line.
-					addTransaction(thisLine.split(" "));
-				}
-			}
-		} catch (Exception e) {
+			store = TransactionFileParser.parse(path, Runtime.getRuntime().availableProcessors());
+		} catch (TransactionFileParser.InvalidLineException e) {
 			e.printStackTrace();
-		} finally {
-			if (myInput != null) {
-				myInput.close();
-			}
+			store = e.getTransactions();
 		}
-	}
-
-	/**
-	 * This method process a line from a file that is read.
-	 * @param tokens the items contained in this line
-	 */
-	private void addTransaction(String itemsString[]) {
-		// create an empty transaction
-		int[] itemset = new int[itemsString.length];
-		// for each item in this line
-		for (int i = 0; i < itemsString.length; i++) {
-			// convert from string to int
-			itemset[i] = Integer.parseInt(itemsString[i]);
+		int[] buffer = new int[store.getMaxLength()];
+		// for each transaction, in the order of the file
+		for (int tid = 0; tid < store.size(); tid++) {
+			int length = store.getItems(tid, buffer);
+			transactions.add(Arrays.copyOf(buffer, length));
 		}
-		
-		// Because the items may not be sorted in a transaction, we sort them by lexicographical order
-		Arrays.sort(itemset);
-		
-		// add the transactions to the list of all transactions in this database.
-		transactions.add(itemset);
 	}
 
 	/**
@@ -0,0 +1,385 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * TransactionFileParser reads a transaction file (one transaction per line, items
+ * separated by whitespace) directly as bytes. The file is split into chunks that
+ * end at a line break, each chunk is mapped in memory with FileChannel.map and
+ * parsed on a ForkJoinPool into int arrays, without creating a String per line or
+ * an Integer per item. The chunks are then concatenated in the order of the file
+ * into a CsrTransactionStore, each transaction sorted.
+ *
+ * As in TransactionDatabase.loadFile, empty lines and lines starting with '#',
+ * '%' or '@' (comments and metadata) are skipped. A token that is not an integer
+ * stops the loading with an InvalidLineException, which holds the transactions
+ * before the faulty line, so that a caller can use them while knowing that the
+ * file was not read completely.
+ *
+ * A file that is too large to be held in memory can also be read in streaming:
+ * the chunks are then parsed a few at a time, and handed over in the order of the
+ * file, so that only the chunks being parsed are in memory.
+ */
+public class TransactionFileParser {
+
+    /** Files smaller than this are parsed in a single chunk */
+    private static final long MIN_PARALLEL_FILE_SIZE = 1 << 20;
+    /** Maximum size of a chunk, so that each chunk can be mapped */
+    private static final long MAX_CHUNK_SIZE = 1 << 26;
+    /** Number of chunks created per thread, to balance the load between threads */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private TransactionFileParser() {
+    }
+
+    /**
+     * Parse a transaction file
+     * @param fileName the path of the file
+     * @param parallelism the number of threads
+     * @return the transactions, each one sorted
+     * @throws InvalidLineException if a token is not an integer
+     * @throws IOException if the file cannot be read
+     */
+    public static CsrTransactionStore parse(String fileName, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, parallelism);
+            List<Chunk> chunks = new ArrayList<>();
+            for (int c = 0; c + 1 < bounds.length; c++) {
+                chunks.add(new Chunk(channel, bounds[c], bounds[c + 1]));
+            }
+            if (chunks.size() == 1) {
+                chunks.get(0).invoke();
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+                try {
+                    pool.invoke(new ParseAll(chunks));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            CsrTransactionStore transactions = concatenate(chunks);
+            for (Chunk chunk : chunks) {
+                chunk.throwError(transactions);
+            }
+            return transactions;
+        }
+    }
+
+    /**
+     * Parse a transaction file, and hand over its transactions chunk by chunk in
+     * the order of the file. At most parallelism chunks (of at most MAX_CHUNK_SIZE
+     * bytes each) are in memory at the same time.
+     * @param fileName the path of the file
+     * @param parallelism the number of threads
+     * @param consumer receives the transactions of each chunk, each one sorted
+     * @throws InvalidLineException if a token is not an integer, once the
+     * transactions before the faulty line are handed over (the exception holds no
+     * transactions)
+     * @throws IOException if the file cannot be read
+     */
+    public static void parse(String fileName, int parallelism, Consumer<CsrTransactionStore> consumer)
+            throws IOException {
+        int threads = Math.max(1, parallelism);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, threads);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (int first = 0; first + 1 < bounds.length; first += threads) {
+                    List<Chunk> chunks = new ArrayList<>();
+                    for (int c = first; c + 1 < bounds.length && c < first + threads; c++) {
+                        chunks.add(new Chunk(channel, bounds[c], bounds[c + 1]));
+                    }
+                    pool.invoke(new ParseAll(chunks));
+                    for (Chunk chunk : chunks) {
+                        consumer.accept(concatenate(Collections.singletonList(chunk)));
+                        chunk.throwError(null);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Calculates the positions where the chunks start. Each chunk starts after a
+     * line break, so that no line is split between two chunks.
+     * @param channel the file
+     * @param parallelism the number of threads
+     * @return the start of each chunk, followed by the size of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] chunkBounds(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long chunkCount = size < MIN_PARALLEL_FILE_SIZE ? 1 : (long) parallelism * CHUNKS_PER_THREAD;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(1, (size + chunkCount - 1) / chunkCount));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = chunkSize;
+        while (position < size) {
+            // move to the byte after the next line break
+            long lineEnd = -1;
+            long read = position;
+            while (lineEnd < 0 && read < size) {
+                buffer.clear();
+                int count = channel.read(buffer, read);
+                if (count <= 0) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineEnd = read + i;
+                        break;
+                    }
+                }
+                read += count;
+            }
+            if (lineEnd < 0 || lineEnd + 1 >= size) {
+                break;
+            }
+            bounds.add(lineEnd + 1);
+            position = lineEnd + 1 + chunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Concatenate the transactions of the chunks, until the first chunk with an error
+     * @param chunks the parsed chunks, in the order of the file
+     * @return the store of the transactions
+     */
+    private static CsrTransactionStore concatenate(List<Chunk> chunks) {
+        int transactionCount = 0;
+        int itemCount = 0;
+        for (Chunk chunk : chunks) {
+            transactionCount += chunk.size;
+            itemCount += chunk.offsets[chunk.size];
+            if (chunk.error != null) {
+                break;
+            }
+        }
+        int[] items = new int[itemCount];
+        int[] offsets = new int[transactionCount + 1];
+        int tid = 0;
+        for (Chunk chunk : chunks) {
+            int base = offsets[tid];
+            System.arraycopy(chunk.items, 0, items, base, chunk.offsets[chunk.size]);
+            for (int t = 1; t <= chunk.size; t++) {
+                offsets[tid + t] = base + chunk.offsets[t];
+            }
+            tid += chunk.size;
+            if (chunk.error != null) {
+                break;
+            }
+        }
+        int[] weights = new int[transactionCount];
+        Arrays.fill(weights, 1);
+        return new CsrTransactionStore(items, offsets, weights);
+    }
+
+    /** Parses the chunks in parallel */
+    private static class ParseAll extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+        private final List<Chunk> chunks;
+
+        ParseAll(List<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected Void compute() {
+            ForkJoinTask.invokeAll(chunks);
+            return null;
+        }
+    }
+
+    /** A part of the file made of whole lines, and its transactions once parsed */
+    private static class Chunk extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+        /** The file */
+        private final FileChannel channel;
+        /** Position of the first byte of the chunk */
+        private final long start;
+        /** Position after the last byte of the chunk */
+        private final long end;
+        /** The items of the transactions of the chunk */
+        private int[] items = new int[1024];
+        /** The position of the first item of each transaction, followed by the number of items */
+        private int[] offsets = new int[257];
+        /** Number of transactions */
+        private int size = 0;
+        /** The error that stopped the parsing, or null */
+        private Exception error = null;
+
+        Chunk(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Throw the error that stopped the parsing of the chunk, if there is one
+         * @param transactions the transactions read before the error, or null
+         * @throws InvalidLineException if a token is not an integer
+         * @throws IOException if the chunk cannot be read
+         */
+        void throwError(TransactionStore transactions) throws IOException {
+            if (error instanceof NumberFormatException) {
+                throw new InvalidLineException((NumberFormatException) error, transactions);
+            } else if (error != null) {
+                throw (IOException) error;
+            }
+        }
+
+        @Override
+        protected Void compute() {
+            try {
+                if (end > start) {
+                    parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                }
+            } catch (IOException | NumberFormatException e) {
+                error = e;
+            }
+            return null;
+        }
+
+        /**
+         * Parse the lines of the chunk
+         * @param buffer the bytes of the chunk
+         */
+        private void parse(MappedByteBuffer buffer) {
+            int limit = buffer.limit();
+            int position = 0;
+            while (position < limit) {
+                byte first = buffer.get(position);
+                if (first == '#' || first == '%' || first == '@') {
+                    // skip a comment or metadata line
+                    while (position < limit && buffer.get(position) != '\n') {
+                        position++;
+                    }
+                    position++;
+                    continue;
+                }
+                int transactionStart = offsets[size];
+                int length = 0;
+                while (position < limit) {
+                    byte b = buffer.get(position);
+                    if (b == '\n') {
+                        position++;
+                        break;
+                    }
+                    if (isWhitespace(b)) {
+                        position++;
+                        continue;
+                    }
+                    // parse one item
+                    int tokenStart = position;
+                    boolean negative = b == '-';
+                    if (b == '-' || b == '+') {
+                        position++;
+                    }
+                    long value = 0;
+                    int digits = 0;
+                    while (position < limit) {
+                        b = buffer.get(position);
+                        if (b < '0' || b > '9') {
+                            break;
+                        }
+                        value = value * 10 + (b - '0');
+                        if (value > (long) Integer.MAX_VALUE + 1) {
+                            throw invalidToken(buffer, tokenStart, limit);
+                        }
+                        digits++;
+                        position++;
+                    }
+                    if (digits == 0 || (position < limit && b != '\n' && !isWhitespace(b))
+                            || (!negative && value > Integer.MAX_VALUE)) {
+                        throw invalidToken(buffer, tokenStart, limit);
+                    }
+                    if (transactionStart + length == items.length) {
+                        items = Arrays.copyOf(items, items.length * 2);
+                    }
+                    items[transactionStart + length++] = (int) (negative ? -value : value);
+                }
+                // an empty line is skipped
+                if (length > 0) {
+                    Arrays.sort(items, transactionStart, transactionStart + length);
+                    if (size + 1 == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[++size] = transactionStart + length;
+                }
+            }
+        }
+
+        /**
+         * Create the error for a token that is not an integer
+         * @param buffer the bytes of the chunk
+         * @param tokenStart the position of the token
+         * @param limit the end of the chunk
+         * @return the exception, with the same message as Integer.parseInt
+         */
+        private NumberFormatException invalidToken(ByteBuffer buffer, int tokenStart, int limit) {
+            StringBuilder token = new StringBuilder();
+            for (int i = tokenStart; i < limit && buffer.get(i) != '\n' && !isWhitespace(buffer.get(i)); i++) {
+                token.append((char) (buffer.get(i) & 0xFF));
+            }
+            return new NumberFormatException("For input string: \"" + token + "\"");
+        }
+    }
+
+    /**
+     * Thrown when a token of the file is not an integer. The loading stops at the
+     * faulty line, and the exception holds the transactions before it.
+     */
+    public static class InvalidLineException extends IOException {
+        private static final long serialVersionUID = 1L;
+        /** The transactions before the faulty line, or null */
+        private final transient TransactionStore transactions;
+
+        /**
+         * Constructor
+         * @param cause the error of the token
+         * @param transactions the transactions before the faulty line, or null
+         */
+        public InvalidLineException(NumberFormatException cause, TransactionStore transactions) {
+            super(cause.getMessage(), cause);
+            this.transactions = transactions;
+        }
+
+        /**
+         * Get the transactions read before the faulty line
+         * @return the transactions, or null if they were handed over to a consumer
+         */
+        public TransactionStore getTransactions() {
+            return transactions;
+        }
+    }
+
+    /**
+     * Check if a byte is a separator, as matched by \s in a regular expression
+     * (the line break is handled separately)
+     * @param b the byte
+     * @return true for a space, tab, carriage return, form feed or vertical tab
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+}
@@ -0,0 +1,243 @@
+import java.util.List;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * TransactionStore is the database of sorted transactions on which a HMP runner
+ * evaluates patterns. It is used for the residual database: when a pattern is
+ * accepted in the code table, removeItemset() removes it from every transaction
+ * that contains it.
+ *
+ * Identical transactions are stored once, with a weight that is the number of
+ * transactions that they represent. The weight is taken into account by the
+ * support, the size in bits and the counts of items and pairs, so that they are
+ * the same as for the original database. Transactions that become identical
+ * when a pattern is removed are merged into the first of them, so that the
+ * items are still visited in the order in which they first appear. The merged
+ * transaction is left empty with a weight of 0, so transaction ids never change.
+ *
+ * Several implementations are available, which store the transactions in
+ * different ways. They all give the same results, and see the items in the same
+ * order (transactions in order, items in ascending order), so that the
+ * frequencies and pair counts that they build are identical.
+ *
+ * @see TransactionStores
+ */
+public interface TransactionStore {
+
+    /**
+     * Receives the transactions of a scan
+     */
+    interface TransactionVisitor {
+        /**
+         * Visit a transaction
+         * @param tid the transaction id
+         * @param items the items of the transaction, in ascending order (the buffer can be modified)
+         * @param length the number of items
+         * @return false to stop the scan
+         */
+        boolean visit(int tid, int[] items, int length);
+    }
+
+    /**
+     * Get the number of distinct transactions
+     * @return the number of distinct transactions
+     */
+    int size();
+
+    /**
+     * Get the number of transactions represented by a distinct transaction. A
+     * transaction merged into an identical one by removeItemset() is left empty
+     * with a weight of 0, so that it adds nothing to the supports and counts.
+     * @param tid a transaction id
+     * @return the weight of the transaction (at least 1, or 0 if it was merged)
+     */
+    int getWeight(int tid);
+
+    /**
+     * Get the number of transactions of the original database
+     * @return the sum of the weights
+     */
+    default int getTransactionCount() {
+        int count = 0;
+        for (int tid = 0; tid < size(); tid++) {
+            count += getWeight(tid);
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of items of a transaction
+     * @param tid a transaction id
+     * @return the length of the transaction
+     */
+    int getLength(int tid);
+
+    /**
+     * Copy the items of a transaction to a buffer, in ascending order
+     * @param tid a transaction id
+     * @param buffer a buffer with at least getLength(tid) positions
+     * @return the length of the transaction
+     */
+    int getItems(int tid, int[] buffer);
+
+    /**
+     * Visit a range of transactions in order. It is used by the passes that read
+     * every transaction, so that a store kept on disk reads them sequentially
+     * instead of with a random access per transaction.
+     * @param from the first transaction (inclusive)
+     * @param to the last transaction (exclusive)
+     * @param buffer a buffer with at least getMaxLength() positions, which receives the items
+     * @param visitor receives each transaction, until it returns false
+     */
+    default void scan(int from, int to, int[] buffer, TransactionVisitor visitor) {
+        for (int tid = from; tid < to; tid++) {
+            if (!visitor.visit(tid, buffer, getItems(tid, buffer))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check if a transaction contains all the items of a sorted pattern
+     * @param tid a transaction id
+     * @param pattern the pattern
+     * @return true if the transaction contains the pattern
+     */
+    boolean contains(int tid, int[] pattern);
+
+    /**
+     * Remove a sorted pattern from every transaction that contains it. Transactions
+     * that become identical are merged.
+     * @param pattern the pattern
+     * @return the number of distinct transactions that were modified
+     */
+    int removeItemset(int[] pattern);
+
+    /**
+     * Get the size in bits of all the transactions (32 bits per item)
+     * @return the size in bits
+     */
+    int getSizeInBits();
+
+    /**
+     * Create an independent copy of the store, which can be modified without
+     * changing this store. It is used to start a new residual database from the
+     * same database without building the store again.
+     * @return the copy
+     */
+    TransactionStore copy();
+
+    /**
+     * Get the length of the longest transaction
+     * @return the maximum length
+     */
+    default int getMaxLength() {
+        int maxLength = 0;
+        for (int tid = 0; tid < size(); tid++) {
+            maxLength = Math.max(maxLength, getLength(tid));
+        }
+        return maxLength;
+    }
+
+    /**
+     * Count the transactions that contain a sorted pattern
+     * @param pattern the pattern
+     * @return the support of the pattern (sum of the weights)
+     */
+    default int support(int[] pattern) {
+        int count = 0;
+        for (int tid = 0; tid < size(); tid++) {
+            if (contains(tid, pattern)) {
+                count += getWeight(tid);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the transactions that contain a sorted pattern, but stop as soon as
+     * the remaining transactions cannot bring the support to a minimum.
+     * @param pattern the pattern
+     * @param minSupport the minimum support
+     * @return the support of the pattern if it is at least minSupport, otherwise
+     *         an upper bound of the support that is smaller than minSupport
+     */
+    default int support(int[] pattern, int minSupport) {
+        int remaining = getTransactionCount();
+        int count = 0;
+        for (int tid = 0; tid < size(); tid++) {
+            int weight = getWeight(tid);
+            if (contains(tid, pattern)) {
+                count += weight;
+            }
+            remaining -= weight;
+            if (count + remaining < minSupport) {
+                return count + remaining;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the transactions that contain each pattern of a list. The patterns are
+     * put in a PatternTrie and counted in a single pass over the transactions.
+     * @param patterns the patterns (an empty pattern has a support of 0)
+     * @return the support of each pattern, in the order of the list
+     */
+    default int[] supports(List<int[]> patterns) {
+        return PatternTrie.countSupports(patterns, this);
+    }
+
+    /**
+     * Check if at least one transaction contains a sorted pattern
+     * @param pattern the pattern
+     * @return true if the pattern appears in the database
+     */
+    default boolean exists(int[] pattern) {
+        for (int tid = 0; tid < size(); tid++) {
+            if (contains(tid, pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the frequency of each item to a map. Items are visited transaction
+     * by transaction, in ascending order.
+     * @param itemFrequency the map from an item to its frequency (-1 if absent)
+     */
+    default void countItems(MapIntToInt itemFrequency) {
+        int[] buffer = new int[getMaxLength()];
+        for (int tid = 0; tid < size(); tid++) {
+            int length = getItems(tid, buffer);
+            int weight = getWeight(tid);
+            for (int i = 0; i < length; i++) {
+                int frequency = itemFrequency.get(buffer[i]);
+                if (frequency == -1) {
+                    itemFrequency.put(buffer[i], weight);
+                } else {
+                    itemFrequency.put(buffer[i], frequency + weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Increment the count of each pair of items appearing together in a transaction
+     * @param matrix the triangular matrix of pair counts
+     */
+    default void countPairs(AbstractTriangularMatrix matrix) {
+        int[] buffer = new int[getMaxLength()];
+        for (int tid = 0; tid < size(); tid++) {
+            int length = getItems(tid, buffer);
+            int weight = getWeight(tid);
+            for (int i = 0; i < length; i++) {
+                for (int j = i + 1; j < length; j++) {
+                    matrix.addToCount(buffer[i], buffer[j], weight);
+                }
+            }
+        }
+    }
+}
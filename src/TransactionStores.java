@@ -0,0 +1,309 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TransactionStores chooses the TransactionStore of a database according to its
+ * density, i.e. the average fraction of the distinct items that a transaction
+ * contains. Dense databases are stored as bitmaps, sparse databases as sorted
+ * int arrays, or as delta-encoded varints when they have so many items that the
+ * int arrays would not fit in memory. Databases with a repeated item in a
+ * transaction are never stored as bitmaps. In all cases, identical transactions
+ * are stored once with a weight.
+ */
+public class TransactionStores {
+
+    /** Default density from which a database is stored as bitmaps */
+    public static final double DEFAULT_DENSITY_THRESHOLD = 0.1;
+    /** Maximum number of 64-bit words of a bitmap store (512 MB) */
+    public static final long MAX_BITMAP_WORDS = 1L << 26;
+    /** Default number of items from which a sparse database is stored as varints (256 MB as int arrays) */
+    public static final long DEFAULT_COMPRESSED_ITEM_THRESHOLD = 1L << 26;
+
+    private TransactionStores() {
+    }
+
+    /**
+     * Create the store of a database, using the default density threshold
+     * @param database a list of sorted transactions
+     * @return a BitmapTransactionStore for a dense database, or a IndexedTransactionStore
+     */
+    public static TransactionStore create(List<int[]> database) {
+        return create(database, DEFAULT_DENSITY_THRESHOLD);
+    }
+
+    /**
+     * Create the store of a database
+     * @param database a list of sorted transactions
+     * @param densityThreshold the density from which the database is stored as bitmaps
+     * @return a BitmapTransactionStore for a dense database, or a IndexedTransactionStore
+     */
+    public static TransactionStore create(List<int[]> database, double densityThreshold) {
+        return create(new CsrTransactionStore(database), densityThreshold);
+    }
+
+    /**
+     * Create the store of a database read from another store, such as the
+     * CsrTransactionStore of a file. The source is not modified.
+     * @param database the source store
+     * @param densityThreshold the density from which the database is stored as bitmaps
+     * @return a BitmapTransactionStore for a dense database, or a IndexedTransactionStore
+     */
+    public static TransactionStore create(TransactionStore database, double densityThreshold) {
+        return create(database, densityThreshold, DEFAULT_COMPRESSED_ITEM_THRESHOLD);
+    }
+
+    /**
+     * Create the store of a database read from another store, such as the
+     * CsrTransactionStore of a file. The source is not modified.
+     * @param database the source store
+     * @param densityThreshold the density from which the database is stored as bitmaps
+     * @param compressedItemThreshold the number of items from which a database that is
+     *        not stored as bitmaps is stored as varints
+     * @return a BitmapTransactionStore for a dense database, a VarintTransactionStore for
+     *         a very large sparse database, or a IndexedTransactionStore
+     */
+    public static TransactionStore create(TransactionStore database, double densityThreshold,
+            long compressedItemThreshold) {
+        DistinctItems distinctItems = new DistinctItems();
+        long totalItems = 0;
+        long storedItems = 0;
+        boolean repeatedItem = false;
+        int[] buffer = new int[database.getMaxLength()];
+        for (int tid = 0; tid < database.size(); tid++) {
+            int length = database.getItems(tid, buffer);
+            distinctItems.add(buffer, length);
+            totalItems += (long) length * database.getWeight(tid);
+            storedItems += length;
+            // a bitmap cannot represent the same item twice in a transaction
+            for (int i = 1; i < length && !repeatedItem; i++) {
+                repeatedItem = buffer[i] == buffer[i - 1];
+            }
+        }
+        int[] items = distinctItems.toArray();
+        long words = (long) database.size() * Math.max(1, (items.length + 63) >>> 6);
+        if (!repeatedItem && items.length > 0 && words <= MAX_BITMAP_WORDS
+                && density(totalItems, database.getTransactionCount(), items.length) >= densityThreshold) {
+            return new BitmapTransactionStore(database, items);
+        }
+        if (storedItems >= compressedItemThreshold) {
+            return new VarintTransactionStore(database);
+        }
+        return new IndexedTransactionStore(database);
+    }
+
+    /**
+     * Calculates the density of a database
+     * @param totalItems the number of items in all transactions
+     * @param transactionCount the number of transactions
+     * @param distinctItems the number of distinct items
+     * @return the average fraction of the distinct items contained in a transaction
+     */
+    static double density(long totalItems, int transactionCount, int distinctItems) {
+        if (transactionCount == 0 || distinctItems == 0) {
+            return 0;
+        }
+        return (double) totalItems / ((double) transactionCount * distinctItems);
+    }
+
+    /**
+     * Collapse the identical transactions of a database. Each distinct transaction
+     * is kept at the position of its first occurrence.
+     * @param database the source store
+     * @param distinctTransactions the list to which the distinct transactions are added
+     * @return the weight of each distinct transaction
+     */
+    static int[] collapse(TransactionStore database, List<int[]> distinctTransactions) {
+        Map<IntArrayWrapper, Integer> positions = new HashMap<>();
+        int[] weights = new int[database.size()];
+        int[] buffer = new int[database.getMaxLength()];
+        for (int tid = 0; tid < database.size(); tid++) {
+            if (database.getWeight(tid) == 0) {
+                continue;
+            }
+            int[] transaction = Arrays.copyOf(buffer, database.getItems(tid, buffer));
+            Integer position = positions.putIfAbsent(new IntArrayWrapper(transaction), distinctTransactions.size());
+            if (position == null) {
+                weights[distinctTransactions.size()] = database.getWeight(tid);
+                distinctTransactions.add(transaction);
+            } else {
+                weights[position] += database.getWeight(tid);
+            }
+        }
+        return Arrays.copyOf(weights, distinctTransactions.size());
+    }
+
+    /**
+     * Get the distinct items of a database, in one pass over the transactions
+     * @param database the source store
+     * @return the distinct items, in ascending order
+     */
+    static int[] distinctItems(TransactionStore database) {
+        DistinctItems distinctItems = new DistinctItems();
+        int[] buffer = new int[database.getMaxLength()];
+        for (int tid = 0; tid < database.size(); tid++) {
+            distinctItems.add(buffer, database.getItems(tid, buffer));
+        }
+        return distinctItems.toArray();
+    }
+
+    /**
+     * DistinctItems collects the distinct items of transactions in a bitset over
+     * the range of the items seen so far, which grows when an item falls outside of
+     * it. It takes one bit per item of the range, whatever the number of
+     * occurrences of the items.
+     *
+     * As in ItemDictionary, the range is bounded by the number of distinct items
+     * (MAX_SPARSITY times the number of items, plus MIN_RANGE), so that sparse or
+     * hashed item ids do not allocate a bitset over most of the range of int.
+     * When an item falls outside of this bound, the items are kept in an int array
+     * instead, which is sorted and deduplicated each time it is full.
+     */
+    static final class DistinctItems {
+
+        /** Maximum ratio between the range of the bitset and the number of items */
+        private static final int MAX_SPARSITY = 8;
+        /** Range that the bitset can always take, whatever the number of items */
+        private static final int MIN_RANGE = 1024;
+        /** Number of the first word of the range of int (item Integer.MIN_VALUE) */
+        private static final long MIN_WORD = Math.floorDiv((long) Integer.MIN_VALUE, 64);
+        /** Number of the last word of the range of int (item Integer.MAX_VALUE) */
+        private static final long MAX_WORD = Math.floorDiv((long) Integer.MAX_VALUE, 64);
+
+        /** The bits of the items, from the item of firstWord */
+        private long[] words = new long[0];
+        /** Number of the word of the first bit (item firstWord * 64) */
+        private long firstWord = 0;
+        /** Number of distinct items (in the sparse array, when it was last deduplicated) */
+        private int count = 0;
+        /** The items, once the bitset is no longer used (null before) */
+        private int[] sparse = null;
+        /** Number of items in the sparse array, with duplicates since the last deduplication */
+        private int sparseLength = 0;
+
+        /**
+         * Add the items of a transaction
+         * @param items the items
+         * @param length the number of items
+         */
+        void add(int[] items, int length) {
+            for (int i = 0; i < length; i++) {
+                add(items[i]);
+            }
+        }
+
+        /**
+         * Add an item
+         * @param item the item
+         */
+        void add(int item) {
+            if (sparse != null) {
+                addSparse(item);
+                return;
+            }
+            long word = Math.floorDiv((long) item, 64) - firstWord;
+            if (word < 0 || word >= words.length) {
+                grow(item);
+                if (sparse != null) {
+                    addSparse(item);
+                    return;
+                }
+                word = Math.floorDiv((long) item, 64) - firstWord;
+            }
+            long mask = 1L << (item & 63);
+            if ((words[(int) word] & mask) == 0) {
+                words[(int) word] |= mask;
+                count++;
+            }
+        }
+
+        /**
+         * Extend the range to an item, at least doubling it so that it grows a
+         * logarithmic number of times, but not beyond the bound of the range. If the
+         * item is outside of the bound, the items are moved to the sparse array.
+         * @param item the item
+         */
+        private void grow(int item) {
+            long itemWord = Math.floorDiv((long) item, 64);
+            if (words.length == 0) {
+                words = new long[1];
+                firstWord = itemWord;
+                return;
+            }
+            long lastWord = firstWord + words.length - 1;
+            long maxWords = ((count + 1L) * MAX_SPARSITY + MIN_RANGE) / 64;
+            if (Math.max(lastWord, itemWord) - Math.min(firstWord, itemWord) + 1 > maxWords) {
+                sparse = toArray();
+                sparseLength = count;
+                sparse = Arrays.copyOf(sparse, Math.max(16, count * 2));
+                words = null;
+                return;
+            }
+            long newFirstWord = firstWord;
+            long newLastWord = lastWord;
+            if (itemWord < firstWord) {
+                newFirstWord = Math.max(MIN_WORD, Math.min(itemWord, Math.max(firstWord - words.length,
+                        lastWord - maxWords + 1)));
+            } else {
+                newLastWord = Math.min(MAX_WORD, Math.max(itemWord, Math.min(lastWord + words.length,
+                        firstWord + maxWords - 1)));
+            }
+            long[] newWords = new long[(int) (newLastWord - newFirstWord + 1)];
+            System.arraycopy(words, 0, newWords, (int) (firstWord - newFirstWord), words.length);
+            words = newWords;
+            firstWord = newFirstWord;
+        }
+
+        /**
+         * Add an item to the sparse array, which is deduplicated when it is full and
+         * grows if it is still more than half full
+         * @param item the item
+         */
+        private void addSparse(int item) {
+            if (sparseLength == sparse.length) {
+                deduplicate();
+                if (sparseLength > sparse.length / 2) {
+                    sparse = Arrays.copyOf(sparse, sparse.length * 2);
+                }
+            }
+            sparse[sparseLength++] = item;
+        }
+
+        /**
+         * Sort the sparse array and remove its duplicates
+         */
+        private void deduplicate() {
+            Arrays.sort(sparse, 0, sparseLength);
+            int distinct = 0;
+            for (int i = 0; i < sparseLength; i++) {
+                if (distinct == 0 || sparse[i] != sparse[distinct - 1]) {
+                    sparse[distinct++] = sparse[i];
+                }
+            }
+            sparseLength = distinct;
+            count = distinct;
+        }
+
+        /**
+         * Get the distinct items
+         * @return the items, in ascending order
+         */
+        int[] toArray() {
+            if (sparse != null) {
+                deduplicate();
+                return Arrays.copyOf(sparse, sparseLength);
+            }
+            int[] items = new int[count];
+            int position = 0;
+            for (int w = 0; w < words.length; w++) {
+                long bits = words[w];
+                while (bits != 0) {
+                    items[position++] = (int) ((firstWord + w) * 64 + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,514 @@
+import java.util.Arrays;
+import java.util.List;
+
+import ca.pfv.spmf.datastructures.collections.map.MapIntToInt;
+
+/**
+ * VarintTransactionStore stores the distinct transactions in a single byte
+ * array, each one delta encoded: the first item is written as a zigzag varint,
+ * then each item as the varint of its difference with the previous item. On a
+ * sparse database with large item ids, this takes one or two bytes per item
+ * instead of four, and there is no object per transaction. It is meant for
+ * databases that do not fit in memory as int arrays.
+ *
+ * The transactions are decoded on the fly by the scans. There is no inverted
+ * index, which would take as much memory as the items, so a pattern is searched
+ * in every transaction.
+ *
+ * Removing items from a sorted transaction never makes its encoding longer (the
+ * gaps around a removed item are merged into one gap), so a modified transaction
+ * is encoded again in its own space. As in the other stores, transaction ids
+ * never change: a transaction merged into an identical one is replaced by an
+ * empty transaction of weight 0. Identical transactions have identical
+ * encodings, so they are compared byte by byte. They are found with an open
+ * addressing table of transaction ids, probed linearly with the hash of the
+ * bytes, so there is no object per transaction (a HashMap would take a node, a
+ * key and a boxed id, several times the bytes of a sparse transaction).
+ *
+ * Each transaction has a 64-bit signature of its items (see
+ * CoverKernel.signature), so most transactions that do not contain a pattern are
+ * rejected without being decoded.
+ */
+public class VarintTransactionStore implements TransactionStore {
+
+    /** The encoded transactions */
+    private final byte[] data;
+    /** The position of the first byte of each transaction */
+    private final int[] offsets;
+    /** The current number of bytes of each transaction */
+    private final int[] byteLengths;
+    /** The current number of items of each transaction */
+    private final int[] lengths;
+    /** The weight of each transaction */
+    private final int[] weights;
+    /** The signature of the items of each transaction */
+    private final long[] signatures;
+    /** The id + 1 of the distinct transactions by the hash of their bytes (0 for a free slot) */
+    private final int[] table;
+    /** The hash code of the bytes of each transaction, when it was put in the table */
+    private final int[] hashes;
+    /** Number of transactions of the original database */
+    private final int transactionCount;
+    /** Size in bits of the transactions */
+    private int sizeInBits = 0;
+    /** Buffer holding a decoded transaction */
+    private final int[] buffer;
+    /** Buffer holding an encoded transaction */
+    private final byte[] encodedBuffer;
+
+    /**
+     * Constructor
+     * @param database a list of sorted transactions
+     */
+    public VarintTransactionStore(List<int[]> database) {
+        this(new CsrTransactionStore(database));
+    }
+
+    /**
+     * Constructor. The transactions are encoded one by one, and identical
+     * transactions are merged into the first one, without building a list of the
+     * distinct transactions.
+     * @param database the source store (it is not modified)
+     */
+    public VarintTransactionStore(TransactionStore database) {
+        int[] items = new int[database.getMaxLength()];
+        byte[] encoded = new byte[Math.max(16, database.size() * 4)];
+        int[] starts = new int[database.size() + 1];
+        int[] rowByteLengths = new int[database.size()];
+        int[] itemCounts = new int[database.size()];
+        int[] transactionWeights = new int[database.size()];
+        long[] transactionSignatures = new long[database.size()];
+        int[] rowHashes = new int[database.size()];
+        int[] distinct = newTable(database.size());
+        int size = 0;
+        int end = 0;
+        for (int tid = 0; tid < database.size(); tid++) {
+            if (database.getWeight(tid) == 0) {
+                continue;
+            }
+            int length = database.getItems(tid, items);
+            if (end + maxEncodedLength(length) > encoded.length) {
+                encoded = Arrays.copyOf(encoded, Math.max(encoded.length * 2, end + maxEncodedLength(length)));
+            }
+            int byteLength = encode(items, length, encoded, end);
+            int hash = hashBytes(encoded, end, byteLength);
+            int other = find(distinct, rowHashes, encoded, starts, rowByteLengths, end, byteLength, hash);
+            if (other < 0) {
+                starts[size] = end;
+                rowByteLengths[size] = byteLength;
+                rowHashes[size] = hash;
+                insert(distinct, rowHashes, size);
+                itemCounts[size] = length;
+                transactionWeights[size] = database.getWeight(tid);
+                transactionSignatures[size] = CoverKernel.signature(items, 0, length);
+                end += byteLength;
+                size++;
+                starts[size] = end;
+            } else {
+                transactionWeights[other] += database.getWeight(tid);
+            }
+        }
+        this.data = Arrays.copyOf(encoded, end);
+        this.offsets = Arrays.copyOf(starts, size + 1);
+        this.lengths = Arrays.copyOf(itemCounts, size);
+        this.weights = Arrays.copyOf(transactionWeights, size);
+        this.signatures = Arrays.copyOf(transactionSignatures, size);
+        this.byteLengths = Arrays.copyOf(rowByteLengths, size);
+        this.hashes = Arrays.copyOf(rowHashes, size);
+        // the table of the build has room for all the transactions of the source
+        this.table = newTable(size);
+        int count = 0;
+        for (int tid = 0; tid < size; tid++) {
+            count += weights[tid];
+            sizeInBits += lengths[tid] * Integer.SIZE * weights[tid];
+            insert(table, hashes, tid);
+        }
+        this.transactionCount = count;
+        this.buffer = new int[Math.max(1, getMaxLength())];
+        this.encodedBuffer = new byte[maxEncodedLength(buffer.length)];
+    }
+
+    /**
+     * Copy constructor. The table of the transactions is copied with their hash
+     * codes, so the bytes are not hashed again.
+     * @param source the store to copy
+     */
+    private VarintTransactionStore(VarintTransactionStore source) {
+        this.data = source.data.clone();
+        this.offsets = source.offsets;
+        this.byteLengths = source.byteLengths.clone();
+        this.lengths = source.lengths.clone();
+        this.weights = source.weights.clone();
+        this.signatures = source.signatures.clone();
+        this.transactionCount = source.transactionCount;
+        this.sizeInBits = source.sizeInBits;
+        this.buffer = new int[source.buffer.length];
+        this.encodedBuffer = new byte[source.encodedBuffer.length];
+        this.table = source.table.clone();
+        this.hashes = source.hashes.clone();
+    }
+
+    /**
+     * Get the largest number of bytes needed to encode a transaction
+     * @param length the number of items
+     * @return the number of bytes
+     */
+    private static int maxEncodedLength(int length) {
+        return length * 5;
+    }
+
+    /**
+     * Encode a sorted transaction
+     * @param items the items
+     * @param length the number of items
+     * @param data the array receiving the bytes
+     * @param position the position of the first byte
+     * @return the number of bytes written
+     */
+    static int encode(int[] items, int length, byte[] data, int position) {
+        int start = position;
+        int previous = 0;
+        for (int i = 0; i < length; i++) {
+            // the first item can be negative, the gaps of a sorted transaction cannot
+            int value = i == 0 ? (items[0] << 1) ^ (items[0] >> 31) : items[i] - previous;
+            while ((value & ~0x7F) != 0) {
+                data[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[position++] = (byte) value;
+            previous = items[i];
+        }
+        return position - start;
+    }
+
+    /**
+     * Decode a transaction
+     * @param tid the transaction id
+     * @param items the array receiving the items
+     * @return the number of items
+     */
+    private int decode(int tid, int[] items) {
+        int position = offsets[tid];
+        int previous = 0;
+        for (int i = 0; i < lengths[tid]; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous = i == 0 ? (value >>> 1) ^ -(value & 1) : previous + value;
+            items[i] = previous;
+        }
+        return lengths[tid];
+    }
+
+    @Override
+    public int size() {
+        return lengths.length;
+    }
+
+    @Override
+    public int getWeight(int tid) {
+        return weights[tid];
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    @Override
+    public int getLength(int tid) {
+        return lengths[tid];
+    }
+
+    @Override
+    public int getMaxLength() {
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        return maxLength;
+    }
+
+    @Override
+    public int getItems(int tid, int[] buffer) {
+        return decode(tid, buffer);
+    }
+
+    @Override
+    public boolean contains(int tid, int[] pattern) {
+        return contains(tid, pattern, CoverKernel.signature(pattern));
+    }
+
+    /**
+     * Check if a transaction contains a sorted pattern, decoding the items only
+     * until the answer is known (as CoverKernel.containsAll)
+     * @param tid a transaction id
+     * @param pattern the pattern
+     * @param patternSignature the signature of the pattern
+     * @return true if the transaction contains the pattern
+     */
+    private boolean contains(int tid, int[] pattern, long patternSignature) {
+        if (lengths[tid] < pattern.length || !CoverKernel.mayContain(signatures[tid], patternSignature)) {
+            return false;
+        }
+        int position = offsets[tid];
+        int previous = 0;
+        int j = 0;
+        for (int i = 0; i < lengths[tid] && j < pattern.length; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous = i == 0 ? (value >>> 1) ^ -(value & 1) : previous + value;
+            if (previous == pattern[j]) {
+                j++;
+            } else if (previous > pattern[j]) {
+                return false;
+            }
+        }
+        return j == pattern.length;
+    }
+
+    @Override
+    public int support(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        int count = 0;
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (contains(tid, pattern, signature)) {
+                count += weights[tid];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean exists(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (contains(tid, pattern, signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int removeItemset(int[] pattern) {
+        long signature = CoverKernel.signature(pattern);
+        int modified = 0;
+        for (int tid = 0; tid < lengths.length; tid++) {
+            if (weights[tid] > 0 && contains(tid, pattern, signature)) {
+                // the slot depends on the bytes, so it is freed before they change
+                remove(table, hashes, tid);
+                int length = CoverKernel.removePattern(buffer, decode(tid, buffer), pattern);
+                int byteLength = encode(buffer, length, encodedBuffer, 0);
+                if (byteLength > offsets[tid + 1] - offsets[tid]) {
+                    throw new IllegalStateException("The encoding of transaction " + tid + " grew");
+                }
+                System.arraycopy(encodedBuffer, 0, data, offsets[tid], byteLength);
+                sizeInBits -= (lengths[tid] - length) * Integer.SIZE * weights[tid];
+                lengths[tid] = length;
+                byteLengths[tid] = byteLength;
+                signatures[tid] = CoverKernel.signature(buffer, 0, length);
+                mergeIdenticalTransaction(tid);
+                modified++;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Merge a modified transaction with the identical transaction, if there is one.
+     * The transaction that comes last is merged into the first one, and is replaced
+     * by an empty transaction of weight 0, so that the transaction ids do not change.
+     * @param tid the id of the modified transaction
+     */
+    private void mergeIdenticalTransaction(int tid) {
+        hashes[tid] = hashBytes(data, offsets[tid], byteLengths[tid]);
+        int other = find(table, hashes, data, offsets, byteLengths, offsets[tid], byteLengths[tid], hashes[tid]);
+        if (other < 0) {
+            insert(table, hashes, tid);
+        } else if (other < tid) {
+            mergeInto(tid, other);
+        } else {
+            remove(table, hashes, other);
+            mergeInto(other, tid);
+            insert(table, hashes, tid);
+        }
+    }
+
+    /**
+     * Merge a transaction into an identical one, and make it empty with weight 0
+     * @param tid the transaction to merge
+     * @param target the identical transaction
+     */
+    private void mergeInto(int tid, int target) {
+        weights[target] += weights[tid];
+        weights[tid] = 0;
+        lengths[tid] = 0;
+        byteLengths[tid] = 0;
+        signatures[tid] = 0;
+    }
+
+    @Override
+    public int getSizeInBits() {
+        return sizeInBits;
+    }
+
+    @Override
+    public VarintTransactionStore copy() {
+        return new VarintTransactionStore(this);
+    }
+
+    @Override
+    public void countItems(MapIntToInt itemFrequency) {
+        for (int tid = 0; tid < lengths.length; tid++) {
+            int length = decode(tid, buffer);
+            for (int i = 0; i < length; i++) {
+                int frequency = itemFrequency.get(buffer[i]);
+                if (frequency == -1) {
+                    itemFrequency.put(buffer[i], weights[tid]);
+                } else {
+                    itemFrequency.put(buffer[i], frequency + weights[tid]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void countPairs(AbstractTriangularMatrix matrix) {
+        for (int tid = 0; tid < lengths.length; tid++) {
+            int length = decode(tid, buffer);
+            for (int i = 0; i < length; i++) {
+                for (int j = i + 1; j < length; j++) {
+                    matrix.addToCount(buffer[i], buffer[j], weights[tid]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes used by the encoded transactions
+     * @return the size of the byte array
+     */
+    public int getEncodedSize() {
+        return data.length;
+    }
+
+    /**
+     * Calculates the hash code of a range of bytes, as Arrays.hashCode
+     */
+    private static int hashBytes(byte[] data, int from, int length) {
+        int hash = 1;
+        for (int i = from; i < from + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    /**
+     * Check if two ranges of bytes are equal
+     */
+    private static boolean sameBytes(byte[] data, int from, int length, byte[] otherData, int otherFrom,
+            int otherLength) {
+        return length == otherLength
+                && Arrays.equals(data, from, from + length, otherData, otherFrom, otherFrom + length);
+    }
+
+    /**
+     * Create an empty table of transaction ids, at most three quarters full once
+     * it holds a number of transactions
+     * @param rows the maximum number of transactions
+     * @return the table, whose size is a power of two
+     */
+    private static int[] newTable(int rows) {
+        int capacity = 2;
+        while (capacity < (long) rows * 4 / 3 + 1) {
+            capacity <<= 1;
+        }
+        return new int[capacity];
+    }
+
+    /**
+     * Get the first slot probed for a hash code
+     * @param table the table
+     * @param hash the hash code of the bytes of a transaction
+     * @return the slot
+     */
+    private static int home(int[] table, int hash) {
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+
+    /**
+     * Find the transaction of a table whose bytes are equal to a range of bytes
+     * @param table the table
+     * @param hashes the hash code of each transaction
+     * @param data the encoded transactions
+     * @param offsets the position of the first byte of each transaction
+     * @param byteLengths the number of bytes of each transaction
+     * @param from the position of the first byte of the range
+     * @param length the number of bytes of the range
+     * @param hash the hash code of the range
+     * @return the transaction id, or -1 if no transaction of the table is equal
+     */
+    private static int find(int[] table, int[] hashes, byte[] data, int[] offsets, int[] byteLengths, int from,
+            int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = home(table, hash); table[slot] != 0; slot = (slot + 1) & mask) {
+            int tid = table[slot] - 1;
+            if (hashes[tid] == hash && sameBytes(data, offsets[tid], byteLengths[tid], data, from, length)) {
+                return tid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Put a transaction in a table
+     * @param table the table
+     * @param hashes the hash code of each transaction
+     * @param tid the transaction id
+     */
+    private static void insert(int[] table, int[] hashes, int tid) {
+        int mask = table.length - 1;
+        int slot = home(table, hashes[tid]);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = tid + 1;
+    }
+
+    /**
+     * Remove a transaction from a table. The following transactions of its probe
+     * sequence are moved back into the freed slot when they can be, so that no
+     * search stops too early and no slot is marked as deleted.
+     * @param table the table
+     * @param hashes the hash code of each transaction, when it was put in the table
+     * @param tid the transaction id
+     */
+    private static void remove(int[] table, int[] hashes, int tid) {
+        int mask = table.length - 1;
+        int hole = home(table, hashes[tid]);
+        while (table[hole] != tid + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            // the transaction can move to the hole if the hole is between its first slot and its slot
+            int first = home(table, hashes[table[slot] - 1]);
+            if (((slot - first) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+    }
+}